@@ -0,0 +1,76 @@
+package connectfour;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Updates and order-statistic queries on a tournament standings tree of
+ * 10 to 1,000,000 players. Scores are per insert-and-remove pair and per
+ * rank-and-select pair.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AVLTreeBenchmark {
+    private static final int BATCH = 64; // entries per call
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int size;
+
+    private AVLTree<TournamentEntry> tree;
+    private TournamentEntry[] extra;
+    private TournamentEntry[] probes;
+    private int[] ranks;
+
+    @Setup
+    public void setUp() {
+        tree = Fixtures.standings(size);
+        extra = new TournamentEntry[BATCH];
+        probes = new TournamentEntry[BATCH];
+        ranks = new int[BATCH];
+        long rng = 3;
+        for (int i = 0; i < BATCH; i++) {
+            extra[i] = new TournamentEntry(String.format("extra%02d", i));
+            extra[i].setWins(i * 100 / BATCH);
+            rng = Fixtures.splitMix(rng);
+            ranks[i] = (int) Long.remainderUnsigned(rng, size);
+            probes[i] = tree.select((int) Long.remainderUnsigned(rng >>> 32, size));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insertRemove() {
+        for (TournamentEntry entry : extra) {
+            tree.insert(entry);
+        }
+        for (TournamentEntry entry : extra) {
+            tree.remove(entry);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void rankSelect(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            bh.consume(tree.rank(probes[i]));
+            bh.consume(tree.select(ranks[i]));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package connectfour;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Board moves, win checks and hints on fixed opening, middlegame and
+ * near-full position sets. Scores are per position: every legal column of
+ * the position is dropped and undone, or one hint is built for it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    @Param({ "6x7x4", "8x9x5", "16x16x5" })
+    public String shape;
+
+    @Param({ "opening", "middlegame", "nearFull" })
+    public String position;
+
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        boards = Fixtures.positions(shape, position);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.POSITION_COUNT)
+    public void dropUndo(Blackhole bh) {
+        for (Board board : boards) {
+            char token = (board.getMoveCount() % 2 == 0) ? 'X' : 'O';
+            for (int col = 0; col < board.getCols(); col++) {
+                if (board.isColumnFull(col))
+                    continue;
+                int row = board.drop(col, token);
+                bh.consume(row);
+                board.undo(row, col);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.POSITION_COUNT)
+    public void dropIsWinningMove(Blackhole bh) {
+        for (Board board : boards) {
+            char token = (board.getMoveCount() % 2 == 0) ? 'X' : 'O';
+            for (int col = 0; col < board.getCols(); col++) {
+                if (board.isColumnFull(col))
+                    continue;
+                int row = board.drop(col, token);
+                bh.consume(board.isWinningMove(row, col));
+                board.undo(row, col);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.POSITION_COUNT)
+    public void hint(Blackhole bh) {
+        for (Board board : boards) {
+            boolean xToMove = board.getMoveCount() % 2 == 0;
+            bh.consume(new Hint(board, xToMove ? 'X' : 'O', xToMove ? 'O' : 'X').getRecommendedCol());
+        }
+    }
+}
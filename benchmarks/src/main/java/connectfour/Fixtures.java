@@ -0,0 +1,144 @@
+package connectfour;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Fixed inputs for the benchmarks, derived from constant seeds so two
+ * builds measure exactly the same work: position sets for several board
+ * sizes, standings trees and player databases of a given size.
+ */
+final class Fixtures {
+    static final int POSITION_COUNT = 16; // positions per set
+    private static final String[] FILE_SUFFIXES = { "", ".journal", ".journal.old", ".tmp", ".index",
+            ".index.tmp" };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Build a fixed set of positions reached by seeded random play that
+     * never ends the game: {@code opening} positions after four plies,
+     * {@code middlegame} ones with half the board filled and
+     * {@code nearFull} ones with half a row's worth of cells left.
+     *
+     * @param shape board as rows x cols x connect, for example {@code 6x7x4}
+     * @param kind  opening, middlegame or nearFull
+     * @return {@link #POSITION_COUNT} boards
+     */
+    static Board[] positions(String shape, String kind) {
+        String[] parts = shape.split("x");
+        int rows = Integer.parseInt(parts[0]);
+        int cols = Integer.parseInt(parts[1]);
+        int connect = Integer.parseInt(parts[2]);
+        int cells = rows * cols;
+        int target = switch (kind) {
+            case "opening" -> Math.min(4, cells - 1);
+            case "middlegame" -> cells / 2;
+            case "nearFull" -> cells - Math.max(1, cols / 2);
+            default -> throw new IllegalArgumentException("Unknown position set: " + kind);
+        };
+        Board[] boards = new Board[POSITION_COUNT];
+        long rng = 0x5EED ^ cells ^ ((long) target << 20);
+        for (int i = 0; i < boards.length; i++) {
+            Board board;
+            do {
+                board = new Board(rows, cols, connect);
+                char token = 'X';
+                while (board.getMoveCount() < target) {
+                    rng = splitMix(rng);
+                    int col = quietMove(board, token, (int) Long.remainderUnsigned(rng, cols));
+                    if (col < 0)
+                        break;
+                    board.drop(col, token);
+                    token = (token == 'X') ? 'O' : 'X';
+                }
+            } while (board.getMoveCount() < target); // stuck: every move ended the game, try again
+            boards[i] = board;
+        }
+        return boards;
+    }
+
+    /**
+     * Returns the first column from {@code start} on that is neither full
+     * nor ends the game, or -1.
+     */
+    private static int quietMove(Board board, char token, int start) {
+        int cols = board.getCols();
+        for (int i = 0; i < cols; i++) {
+            int col = (start + i) % cols;
+            if (board.isColumnFull(col))
+                continue;
+            int row = board.drop(col, token);
+            boolean ends = board.isWinningMove(row, col) || board.isFull();
+            board.undo(row, col);
+            if (!ends)
+                return col;
+        }
+        return -1;
+    }
+
+    /**
+     * Build a standings tree of {@code size} players with random win counts.
+     */
+    static AVLTree<TournamentEntry> standings(int size) {
+        AVLTree<TournamentEntry> tree = new AVLTree<>();
+        long rng = 1;
+        for (int i = 0; i < size; i++) {
+            TournamentEntry entry = new TournamentEntry(playerName(i));
+            rng = splitMix(rng);
+            entry.setWins((int) Long.remainderUnsigned(rng, 100));
+            tree.insert(entry);
+        }
+        return tree;
+    }
+
+    /**
+     * Build a manager holding {@code size} profiles with a few results each,
+     * saving to a new temporary file whose suffix selects the store. The
+     * caller closes it with {@link #delete(PlayerManager, File)}.
+     *
+     * @param size   number of profiles
+     * @param suffix {@code .dat} for the memory store, {@code .store} for
+     *               the paged one
+     * @param file   receives the file the manager saves to
+     * @return the manager
+     * @throws IOException when no temporary file can be created
+     */
+    static PlayerManager playerDatabase(int size, String suffix, File[] file) throws IOException {
+        file[0] = File.createTempFile("connectfour-bench", suffix);
+        file[0].delete(); // the manager starts empty when its file does not exist
+        PlayerManager manager = new PlayerManager(file[0].getPath());
+        long rng = 7;
+        for (int i = 0; i < size; i++) {
+            PlayerProfile profile = new PlayerProfile(playerName(i));
+            for (int g = 0; g < 5; g++) {
+                rng = splitMix(rng);
+                profile.recordResult((rng & 8) != 0, (int) Long.remainderUnsigned(rng, 3) - 1);
+            }
+            manager.add(profile);
+        }
+        return manager;
+    }
+
+    /**
+     * Close a manager built by {@link #playerDatabase} and delete its files.
+     */
+    static void delete(PlayerManager manager, File file) {
+        manager.close();
+        for (String suffix : FILE_SUFFIXES) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    static String playerName(long i) {
+        return String.format("player%07d", i);
+    }
+
+    static long splitMix(long state) {
+        long z = state + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,82 @@
+package connectfour;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Looking up and saving players in a {@link PagedPlayerStore} of 10 to
+ * 1,000,000 profiles. Every trial builds its own store in a temporary file
+ * and closes and deletes it at the end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PagedStoreBenchmark {
+    private static final int BATCH = 64; // lookups per call
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int profiles;
+
+    private final File[] file = new File[1];
+    private PlayerManager manager;
+    private PlayerProfile changed;
+    private long rng = 11;
+
+    @Setup
+    public void setUp() throws IOException {
+        manager = Fixtures.playerDatabase(profiles, ".store", file);
+        manager.flush();
+        changed = new PlayerProfile(Fixtures.playerName(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(manager, file[0]);
+    }
+
+    /**
+     * Looking up random players and writing them back, as login, profile
+     * and a finished game do. Most of them have left the cache, so this
+     * measures reading records through the index.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void lookup(Blackhole bh) {
+        PlayerStore store = manager.getStore();
+        for (int i = 0; i < BATCH; i++) {
+            rng = Fixtures.splitMix(rng);
+            PlayerProfile p = store.get(Fixtures.playerName(Long.remainderUnsigned(rng, profiles)));
+            store.changed(p);
+            bh.consume(p);
+        }
+    }
+
+    /**
+     * Saving after a game: the pages of one changed record are forced to
+     * disk.
+     */
+    @Benchmark
+    public void save() {
+        manager.add(changed);
+        manager.flush();
+    }
+}
@@ -0,0 +1,95 @@
+package connectfour;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Saving, compacting and loading a player database of 10 to 1,000,000
+ * profiles kept in memory, and moving players on its leaderboard. Every
+ * trial builds its own database in a temporary file and closes and
+ * deletes it at the end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayerDatabaseBenchmark {
+    private static final int BATCH = 64; // leaderboard updates per call
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int profiles;
+
+    private final File[] file = new File[1];
+    private PlayerManager manager;
+    private PlayerProfile changed;
+    private Leaderboard leaderboard;
+    private long rng = 13;
+
+    @Setup
+    public void setUp() throws IOException {
+        manager = Fixtures.playerDatabase(profiles, ".dat", file);
+        manager.compact();
+        changed = new PlayerProfile(Fixtures.playerName(0));
+        leaderboard = new Leaderboard(manager.getStore());
+        leaderboard.top(Leaderboard.Order.WINS, 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(manager, file[0]);
+    }
+
+    /**
+     * Saving after a game: one changed profile goes to the journal.
+     */
+    @Benchmark
+    public void save() {
+        manager.add(changed);
+        manager.flush();
+    }
+
+    @Benchmark
+    public void compact() {
+        manager.compact();
+    }
+
+    @Benchmark
+    public void load() {
+        manager.load();
+    }
+
+    /**
+     * A finished game on the leaderboard: a random player wins, moves in
+     * the wins ordering, and the top 10 are read back.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void leaderboardUpdateTop(Blackhole bh) {
+        PlayerStore store = manager.getStore();
+        for (int i = 0; i < BATCH; i++) {
+            rng = Fixtures.splitMix(rng);
+            PlayerProfile p = store.get(Fixtures.playerName(Long.remainderUnsigned(rng, profiles)));
+            p.recordResult(false, 1);
+            leaderboard.update(p);
+            bh.consume(leaderboard.top(Leaderboard.Order.WINS, 10));
+        }
+    }
+}
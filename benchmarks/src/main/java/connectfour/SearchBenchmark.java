@@ -0,0 +1,56 @@
+package connectfour;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The hard AI's fixed-depth search on the standard board. Every position
+ * is searched with an empty transposition table, so each search is a full
+ * cold search; the score is per search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({ "4", "6" })
+    public int depth;
+
+    @Param({ "opening", "middlegame", "nearFull" })
+    public String position;
+
+    private Board[] boards;
+    private HardAI ai;
+
+    @Setup
+    public void setUp() {
+        boards = Fixtures.positions("6x7x4", position);
+        ai = new HardAI(depth, 1, 0); // small table: clearing it is part of each timed search
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.POSITION_COUNT)
+    public void chooseMove(Blackhole bh) {
+        for (Board board : boards) {
+            boolean xToMove = board.getMoveCount() % 2 == 0;
+            ai.clearTable();
+            bh.consume(ai.chooseMove(board, xToMove ? 'X' : 'O', xToMove ? 'O' : 'X'));
+        }
+    }
+}
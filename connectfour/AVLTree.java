@@ -2,15 +2,26 @@ package connectfour;
 
 import java.util.*;
 
+/**
+ * Self-balancing binary search tree of distinct values.
+ * <p>
+ * Every node also records the size of its subtree, so besides insert and
+ * remove the tree answers order-statistic queries in O(log n): the rank of
+ * a value, the value at a rank, and iteration over a range of ranks that
+ * visits only the values in the range.
+ * </p>
+ */
 public class AVLTree<T extends Comparable<T>> {
     private class Node {
         T value;
         Node left, right;
         int height;
+        int size; // nodes in this subtree, including this one
 
         Node(T value) {
             this.value = value;
             this.height = 1;
+            this.size = 1;
         }
     }
 
@@ -30,6 +41,146 @@ public class AVLTree<T extends Comparable<T>> {
         return result;
     }
 
+    /**
+     * @return number of values in the tree
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the number of values in the tree that are smaller than the
+     * given one, which is the value's position in order when it is in the
+     * tree.
+     *
+     * @param value value to look up; need not be in the tree
+     * @return 0-based rank
+     */
+    public int rank(T value) {
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = value.compareTo(node.value);
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left);
+                if (cmp == 0)
+                    break;
+                rank++;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns whether the tree holds a value equal to the given one.
+     *
+     * @param value value to look up
+     * @return true when found
+     */
+    public boolean contains(T value) {
+        Node node = root;
+        while (node != null) {
+            int cmp = value.compareTo(node.value);
+            if (cmp == 0)
+                return true;
+            node = (cmp < 0) ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value at the given position in order.
+     *
+     * @param k 0-based rank
+     * @return the value with exactly {@code k} smaller values in the tree
+     * @throws IndexOutOfBoundsException when {@code k} is not below
+     *                                   {@link #size()}
+     */
+    public T select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("Rank " + k + " out of range for size " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k == leftSize) {
+                return node.value;
+            } else {
+                k -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the values at ranks {@code from} (inclusive) to {@code to}
+     * (exclusive) in order, without copying the tree. Finding the first
+     * value takes O(log n) and each further value amortized O(1). The tree
+     * must not be changed while an iterator is in use.
+     *
+     * @param from first rank
+     * @param to   rank after the last; clamped to {@link #size()}
+     * @return the values in the range
+     * @throws IndexOutOfBoundsException when {@code from} is negative or
+     *                                   {@code to} is below {@code from}
+     */
+    public Iterable<T> range(int from, int to) {
+        if (from < 0 || to < from) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + " to " + to);
+        }
+        int end = Math.min(to, size());
+        return () -> new Iterator<T>() {
+            private final Deque<Node> pending = seek(from);
+            private int remaining = Math.max(0, end - from);
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public T next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                Node node = pending.pop();
+                for (Node n = node.right; n != null; n = n.left) {
+                    pending.push(n);
+                }
+                return node.value;
+            }
+        };
+    }
+
+    /**
+     * Build the stack of nodes an in-order walk starting at rank {@code k}
+     * still has to visit: the node at rank {@code k} on top, below it each
+     * ancestor whose left subtree holds it.
+     */
+    private Deque<Node> seek(int k) {
+        Deque<Node> pending = new ArrayDeque<>();
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (k <= leftSize) {
+                pending.push(node);
+                if (k == leftSize)
+                    break;
+                node = node.left;
+            } else {
+                k -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return pending;
+    }
+
     private Node insert(Node node, T value) {
         if (node == null)
             return new Node(value);
@@ -80,8 +231,12 @@ public class AVLTree<T extends Comparable<T>> {
         return node == null ? 0 : node.height;
     }
 
+    private int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
     private Node balance(Node node) {
-        updateHeight(node);
+        update(node);
         int balance = getBalance(node);
         if (balance > 1) {
             if (getBalance(node.left) < 0)
@@ -96,8 +251,9 @@ public class AVLTree<T extends Comparable<T>> {
         return node;
     }
 
-    private void updateHeight(Node node) {
+    private void update(Node node) {
         node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.size = 1 + size(node.left) + size(node.right);
     }
 
     private int getBalance(Node node) {
@@ -109,8 +265,8 @@ public class AVLTree<T extends Comparable<T>> {
         Node T2 = x.right;
         x.right = y;
         y.left = T2;
-        updateHeight(y);
-        updateHeight(x);
+        update(y);
+        update(x);
         return x;
     }
 
@@ -119,8 +275,8 @@ public class AVLTree<T extends Comparable<T>> {
         Node T2 = y.left;
         y.left = x;
         x.right = T2;
-        updateHeight(x);
-        updateHeight(y);
+        update(x);
+        update(y);
         return y;
     }
 }
\ No newline at end of file
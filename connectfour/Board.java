@@ -1,5 +1,7 @@
 package connectfour;
 
+import java.util.Arrays;
+
 /**
  * Represents the Connect-Four game board.
  * <p>
@@ -8,12 +10,40 @@ package connectfour;
  * winning moves (connect-N). The board also offers utility accessors and a
  * simple ASCII print for console display.
  * </p>
+ * <p>
+ * Internally the grid is kept as bitboards: one bit set per token, plus the
+ * height of every column and a move counter, so dropping, undoing and
+ * checking for a full board or column are constant time.
+ * </p>
+ * <p>
+ * The board also keeps, per token, the set of empty cells that would
+ * complete a connect-N line for that token (its threats), updated on every
+ * drop and undo. {@link #findWinningColumn(char)} reads a column where a
+ * token can win right now straight from that set.
+ * </p>
  */
 public class Board {
     private int rows;
     private int cols;
     private int connect; // number in a row needed to win
-    private char[][] grid;
+    private int stride; // bits per column: one per row plus a guard bit
+    private int words; // longs per bitboard; 1 means the packed 64-bit layout
+    private int[] heights; // number of tokens in each column
+    private int moves; // number of tokens on the board
+    private char[] tokens; // token owning each bitboard slot
+    private int tokenCount;
+    private long[][] bits; // bits[slot][word], one bitboard per token
+    private long[][] threats; // threats[slot][word], empty cells completing a line
+    private long[] occupied; // every token
+    private long boardMask; // packed layout only: every cell on the board
+    private long bottomMask; // packed layout only: bottom cell of every column
+    private long[] lineScratch; // packed layout only: work array for lineThreats
+    private long staleThreats; // bit s set when threats[s] must be recomputed
+    private int[] historyBit; // packed layout only, per move number: cell dropped
+    private long[] historyThreats; // dropping token's threats before the drop
+    private long[] historyCleared; // slots whose threat was filled by the drop
+    private long[] historyStale; // staleThreats before the drop
+    private long key; // Zobrist hash of the current position
 
     /**
      * Create a new Board with the given dimensions and required connect length.
@@ -26,33 +56,81 @@ public class Board {
         this.rows = rows;
         this.cols = cols;
         this.connect = connect;
-        this.grid = new char[rows][cols];
+        this.stride = rows + 1;
+        this.words = (cols * stride + 63) / 64;
+        this.heights = new int[cols];
+        this.tokens = new char[2];
+        this.bits = new long[2][words];
+        this.threats = new long[2][words];
+        this.occupied = new long[words];
+        if (words == 1) {
+            for (int col = 0; col < cols; col++) {
+                bottomMask |= 1L << (col * stride);
+            }
+            boardMask = bottomMask * ((1L << rows) - 1);
+            lineScratch = new long[connect];
+            historyBit = new int[rows * cols];
+            historyThreats = new long[rows * cols];
+            historyCleared = new long[rows * cols];
+            historyStale = new long[rows * cols];
+        }
         clear();
     }
 
+    /**
+     * Copy a board. The copy starts without threat tracking, whatever the
+     * original tracked, so a search on the copy pays for no bookkeeping
+     * until it asks about threats itself.
+     *
+     * @param other board to copy
+     */
     public Board(Board other) {
         this.rows = other.rows;
         this.cols = other.cols;
         this.connect = other.connect;
-        this.grid = new char[rows][cols];
+        this.stride = other.stride;
+        this.words = other.words;
+        this.heights = other.heights.clone();
+        this.moves = other.moves;
+        this.tokens = other.tokens.clone();
+        this.tokenCount = other.tokenCount;
+        this.key = other.key;
+        this.occupied = other.occupied.clone();
+        this.boardMask = other.boardMask;
+        this.bottomMask = other.bottomMask;
+        this.staleThreats = -1L;
+        if (words == 1) {
+            this.lineScratch = new long[connect];
+            this.historyBit = new int[rows * cols];
+            Arrays.fill(historyBit, -1); // no move below can be restored exactly
+            this.historyThreats = new long[rows * cols];
+            this.historyCleared = new long[rows * cols];
+            this.historyStale = new long[rows * cols];
+        }
+        this.bits = new long[other.bits.length][];
+        this.threats = new long[other.threats.length][words];
 
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                this.grid[r][c] = other.grid[r][c];
-            }
+        for (int s = 0; s < bits.length; s++) {
+            this.bits[s] = other.bits[s].clone();
         }
     }
 
     /**
-     * Clear the board, setting every cell to an empty space character.
+     * Clear the board, removing every token.
      * This resets the board state for a new game.
      */
     public void clear() {
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                grid[row][col] = ' ';
-            }
+        for (int col = 0; col < cols; col++) {
+            heights[col] = 0;
         }
+        for (int s = 0; s < bits.length; s++) {
+            Arrays.fill(bits[s], 0L);
+            Arrays.fill(threats[s], 0L);
+        }
+        Arrays.fill(occupied, 0L);
+        staleThreats = -1L;
+        moves = 0;
+        key = 0L;
     }
 
     /**
@@ -82,6 +160,59 @@ public class Board {
         return connect;
     }
 
+    /**
+     * Returns the number of tokens currently stacked in a column.
+     *
+     * @param col column index
+     * @return column height
+     */
+    public int getHeight(int col) {
+        return heights[col];
+    }
+
+    /**
+     * Returns the number of tokens currently on the board.
+     *
+     * @return move count
+     */
+    public int getMoveCount() {
+        return moves;
+    }
+
+    /**
+     * Returns the Zobrist hash of the current position. Equal positions on
+     * boards of the same size have equal keys, however the moves were
+     * ordered; the key is updated incrementally by drop and undo.
+     *
+     * @return 64-bit position key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns a key to XOR into {@link #getKey()} when the same position
+     * must hash differently depending on which token moves next.
+     *
+     * @param token token of the player to move
+     * @return side-to-move key
+     */
+    public static long sideKey(char token) {
+        return zobrist(token, -1);
+    }
+
+    /**
+     * Returns the token stored in a cell.
+     *
+     * @param row row index (0 is the top row)
+     * @param col column index
+     * @return the token, or a space when the cell is empty
+     */
+    public char getToken(int row, int col) {
+        int slot = slotAt(bitIndex(row, col));
+        return slot < 0 ? ' ' : tokens[slot];
+    }
+
     /**
      * Check whether the specified column is full (no empty cells available to
      * drop a token).
@@ -90,7 +221,7 @@ public class Board {
      * @return true if the top cell in the column is occupied; false otherwise
      */
     public boolean isColumnFull(int col) {
-        return grid[0][col] != ' ';
+        return heights[col] == rows;
     }
 
     /**
@@ -102,23 +233,85 @@ public class Board {
      * @return the row index where the token landed or -1 if the column is full
      */
     public int drop(int col, char token) {
-        for (int r = rows - 1; r >= 0; r--) {
-            if (grid[r][col] == ' ') {
-                grid[r][col] = token;
-                return r;
+        if (heights[col] == rows) {
+            return -1; // column full
+        }
+        int slot = slotOf(token);
+        int h = heights[col]++;
+        int bit = col * stride + h;
+        if (staleThreats == -1L || words > 1) {
+            // nothing cached to keep up to date; the matching undo sees -1
+            if (words == 1) {
+                historyBit[moves] = -1;
             }
+            staleThreats = -1L;
+        } else {
+            recordDrop(slot, bit);
         }
-        return -1; // column full
+        bits[slot][bit >>> 6] |= 1L << bit;
+        occupied[bit >>> 6] |= 1L << bit;
+        key ^= zobrist(token, bit);
+        moves++;
+        return rows - 1 - h;
     }
 
     /**
      * Undo the move at the specified coordinates by clearing that cell.
+     * Moves are expected to be undone in the reverse order they were
+     * dropped within a column, as {@link MoveStack} does.
      *
      * @param row row index of the cell to clear
      * @param col column index of the cell to clear
      */
     public void undo(int row, int col) {
-        grid[row][col] = ' ';
+        int h = rows - 1 - row;
+        int bit = col * stride + h;
+        int slot = slotAt(bit);
+        if (slot >= 0) {
+            bits[slot][bit >>> 6] &= ~(1L << bit);
+            occupied[bit >>> 6] &= ~(1L << bit);
+            key ^= zobrist(tokens[slot], bit);
+            heights[col] = h;
+            moves--;
+            if (words == 1 && historyBit[moves] == bit) {
+                restoreDrop(slot, bit);
+            } else if (words == 1 && historyBit[moves] != -1) {
+                // out of order: the history below no longer matches the board
+                staleThreats = -1L;
+                Arrays.fill(historyBit, 0, moves, -1);
+            } else {
+                // dropped untracked, and so was every move below it
+                staleThreats = -1L;
+            }
+        }
+    }
+
+    /**
+     * Remove a newly filled cell from every token's threats, remembering
+     * what changed so {@link #restoreDrop(int, int)} can put it back.
+     */
+    private void recordDrop(int slot, int bit) {
+        long cell = 1L << bit;
+        long cleared = 0L;
+        historyBit[moves] = bit;
+        historyThreats[moves] = threats[slot][0];
+        historyStale[moves] = staleThreats;
+        for (int s = 0; s < tokenCount; s++) {
+            long[] open = threats[s];
+            cleared |= ((open[0] >>> bit) & 1L) << s;
+            open[0] &= ~cell;
+        }
+        historyCleared[moves] = cleared;
+        staleThreats |= 1L << slot;
+    }
+
+    private void restoreDrop(int slot, int bit) {
+        long cleared = historyCleared[moves];
+        for (int s = 0; s < tokenCount; s++) {
+            threats[s][0] |= ((cleared >>> s) & 1L) << bit;
+        }
+        threats[slot][0] = historyThreats[moves];
+        staleThreats = historyStale[moves];
     }
 
     /**
@@ -127,14 +320,89 @@ public class Board {
      * @return true when every cell contains a token; false otherwise
      */
     public boolean isFull() {
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                if (grid[r][c] == ' ') {
-                    return false;
-                }
+        return moves == rows * cols;
+    }
+
+    /**
+     * Check whether an empty cell would complete a connect-N line for a
+     * token, whether or not a token can be dropped there yet.
+     *
+     * @param token token to check
+     * @param row   row index of the cell
+     * @param col   column index of the cell
+     * @return true when the cell is an open threat for the token
+     */
+    public boolean isThreat(char token, int row, int col) {
+        int slot = slotFor(token);
+        if (slot < 0) {
+            return false;
+        }
+        long[] open = threatsOf(slot);
+        int bit = bitIndex(row, col);
+        return (open[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Find a column where dropping the token right now completes a
+     * connect-N line.
+     *
+     * @param token token to check
+     * @return the lowest such column, or -1 when the token cannot win this move
+     */
+    public int findWinningColumn(char token) {
+        long wins = getWinningColumns(token);
+        if (wins != 0) {
+            return Long.numberOfTrailingZeros(wins);
+        }
+        if (slotFor(token) < 0) {
+            return -1;
+        }
+        for (int col = 64; col < cols; col++) {
+            if (isWinningColumn(token, col)) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the columns where dropping the token right now completes a
+     * connect-N line, as a bitmask with bit {@code c} set for column c.
+     * Only the first 64 columns are reported; {@link #findWinningColumn(char)}
+     * covers any width.
+     *
+     * @param token token to check
+     * @return bitmask of winning columns, 0 when there are none
+     */
+    public long getWinningColumns(char token) {
+        int slot = slotFor(token);
+        if (slot < 0) {
+            return 0L;
+        }
+        long[] open = threatsOf(slot);
+        long result = 0L;
+        if (words == 1) {
+            long wins = open[0] & (occupied[0] + bottomMask) & boardMask;
+            while (wins != 0) {
+                result |= 1L << (Long.numberOfTrailingZeros(wins) / stride);
+                wins &= wins - 1;
+            }
+            return result;
+        }
+        for (int col = 0; col < cols && col < 64; col++) {
+            if (isWinningColumn(token, col)) {
+                result |= 1L << col;
             }
         }
-        return true;
+        return result;
+    }
+
+    private boolean isWinningColumn(char token, int col) {
+        if (heights[col] == rows) {
+            return false;
+        }
+        int bit = col * stride + heights[col];
+        return (threatsOf(slotFor(token))[bit >>> 6] & (1L << bit)) != 0;
     }
 
     /**
@@ -144,61 +412,245 @@ public class Board {
      *
      * @param row row index of the last move
      * @param col column index of the last move
-     * @return true if that move produced a connect-N; false otherwise
+     * @return true if that move produced a connect-N; false otherwise (also
+     *         when the cell is empty)
      */
     public boolean isWinningMove(int row, int col) {
-        char token = grid[row][col];
-
-        int[][] directions = {
-                { 0, 1 },
-                { 1, 0 },
-                { 1, 1 },
-                { 1, -1 }
-        };
-
-        for (int[] dir : directions) {
-            int count = countDirection(row, col, dir[0], dir[1], token)
-                    + countDirection(row, col, -dir[0], -dir[1], token) - 1;
-            if (count >= connect) {
-                return true;
-            }
+        int h = rows - 1 - row;
+        int bit = col * stride + h;
+        int slot = slotAt(bit);
+        if (slot < 0) {
+            return false;
         }
-        return false;
+
+        if (words == 1) {
+            long board = bits[slot][0];
+            long cell = 1L << bit;
+            return aligned(board, cell, 1)
+                    || aligned(board, cell, stride)
+                    || aligned(board, cell, stride + 1)
+                    || aligned(board, cell, stride - 1);
+        }
+
+        long[] board = bits[slot];
+        return countRun(board, col, h, 0, 1) + countRun(board, col, h, 0, -1) - 1 >= connect
+                || countRun(board, col, h, 1, 0) + countRun(board, col, h, -1, 0) - 1 >= connect
+                || countRun(board, col, h, 1, 1) + countRun(board, col, h, -1, -1) - 1 >= connect
+                || countRun(board, col, h, 1, -1) + countRun(board, col, h, -1, 1) - 1 >= connect;
     }
 
     /**
      * Explanation of the winning-check algorithm:
      *
-     * - We consider four direction vectors that represent unique lines through
-     * a cell: horizontal (0,1), vertical (1,0), diagonal down-right (1,1)
-     * and diagonal down-left (1,-1). For each direction we count how many
-     * consecutive matching tokens exist starting at the last-placed cell in
-     * both the forward and backward direction. The counts from both sides
-     * include the origin cell, so we subtract 1 to avoid double-counting.
+     * - Cells are numbered column by column from the bottom, with one spare
+     * guard bit on top of every column: bit = col * (rows + 1) + height.
+     * Moving one cell up adds 1, one column right adds rows + 1, and the two
+     * diagonals add rows + 2 and rows. The guard bits are never set, so a
+     * line that walks off the top or bottom of a column always hits a zero.
+     *
+     * - When the whole board fits in one long, {@link #aligned(long,long,int)}
+     * ANDs the token's bitboard with connect - 1 shifted copies of itself.
+     * A bit that survives marks the start of a connect-N line in that
+     * direction; the line is a win for this move when one of those starts
+     * lies within connect - 1 steps behind the last-placed cell.
+     *
+     * - Threats are the empty cells that would finish a line. On a packed
+     * board {@link #threatCells(long)} finds them for one token in a fixed
+     * number of shifts: a cell is a threat in a direction when, for one of
+     * the connect positions it could take in a window, the other connect - 1
+     * cells of that window are all the token's. That costs a few dozen
+     * shifts, too much to pay on every drop of a search, so a drop only
+     * removes the filled cell from the other tokens' threats and marks the
+     * dropping token's set stale; it is recomputed the first time it is
+     * asked for. Each drop records what it changed by move number, so the
+     * matching undo restores every set exactly in constant time. While no
+     * set has been asked for (as in a search that never queries threats)
+     * drops skip the bookkeeping entirely. Larger boards and out-of-order
+     * undos simply mark every set stale; an out-of-order undo also forgets
+     * the history of the moves below it, which no longer describes the
+     * board.
+     *
+     * - Larger boards use several longs per bitboard and fall back to
+     * {@link #countRun(long[],int,int,int,int)}, which walks from the
+     * last-placed cell in both directions of each line, counting matching
+     * bits. Counts from both sides include the origin, so 1 is subtracted.
+     */
+
+    /**
+     * Check a packed bitboard for a connect-N line through {@code cell} along
+     * one direction.
      *
-     * - The helper {@link #countDirection(int,int,int,int,char)} recursively
-     * walks in a straight line while the grid contains the same token. The
-     * recursion ends when it reaches out-of-bounds or a different token.
+     * @param board bitboard of a single token
+     * @param cell  single-bit mask of the last-placed cell
+     * @param shift bit distance between neighbouring cells in this direction
+     * @return true when a connect-N line through the cell exists
      */
+    private boolean aligned(long board, long cell, int shift) {
+        long starts = board;
+        for (int i = 1; i < connect && starts != 0; i++) {
+            starts &= shiftRight(board, i * shift);
+        }
+        for (int i = 0; i < connect && starts != 0; i++) {
+            if ((starts & shiftRight(cell, i * shift)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     /**
-     * Recursively count contiguous tokens matching {@code token} starting at
-     * (r,c) and following the direction (dr,dc). Used by {@link
+     * Count contiguous set bits starting at (col,h) and following the
+     * direction (dc,dh) on a multi-word bitboard. Used by {@link
      * #isWinningMove(int,int)}.
      *
-     * @param r     starting row
-     * @param c     starting column
-     * @param dr    row delta per step
+     * @param board bitboard of a single token
+     * @param col   starting column
+     * @param h     starting height (0 is the bottom row)
      * @param dc    column delta per step
-     * @param token token to match
+     * @param dh    height delta per step
      * @return number of matching tokens in the given direction
      */
-    private int countDirection(int r, int c, int dr, int dc, char token) {
-        if (r < 0 || r >= rows || c < 0 || c >= cols)
-            return 0;
-        if (grid[r][c] != token)
-            return 0;
-        return 1 + countDirection(r + dr, c + dc, dr, dc, token);
+    private int countRun(long[] board, int col, int h, int dc, int dh) {
+        int count = 0;
+        while (col >= 0 && col < cols && h >= 0 && h < rows) {
+            int bit = col * stride + h;
+            if ((board[bit >>> 6] & (1L << bit)) == 0) {
+                break;
+            }
+            count++;
+            col += dc;
+            h += dh;
+        }
+        return count;
+    }
+
+    /**
+     * Zobrist key for a token on a cell. Keys are derived from the token and
+     * bit index with the SplitMix64 finalizer, so no random tables need to be
+     * kept per board and every board of the same size agrees on them.
+     */
+    private static long zobrist(char token, int bit) {
+        long z = ((long) token << 32 | (bit & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Every cell that would complete a connect-N line for the given packed
+     * bitboard, including occupied cells; callers mask those out.
+     */
+    private long threatCells(long board) {
+        return (lineThreats(board, 1) | lineThreats(board, stride)
+                | lineThreats(board, stride + 1) | lineThreats(board, stride - 1)) & boardMask;
+    }
+
+    private long lineThreats(long board, int shift) {
+        // below[j]: cells whose j nearest neighbours on the low side are the token's
+        long[] below = lineScratch;
+        below[0] = -1L;
+        for (int j = 1; j < connect; j++) {
+            below[j] = below[j - 1] & shiftLeft(board, j * shift);
+        }
+        long above = -1L;
+        long result = 0L;
+        for (int j = 0; j < connect; j++) {
+            result |= below[connect - 1 - j] & above;
+            above &= shiftRight(board, (j + 1) * shift);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the threat bitboard of a slot, recomputing it first if a drop
+     * or an out-of-order undo has made it stale.
+     */
+    private long[] threatsOf(int slot) {
+        long mask = 1L << slot;
+        if ((staleThreats & mask) == 0) {
+            return threats[slot];
+        }
+        if (words == 1) {
+            threats[slot][0] = threatCells(bits[slot][0]) & ~occupied[0];
+        } else {
+            Arrays.fill(threats[slot], 0L);
+            for (int col = 0; col < cols; col++) {
+                for (int h = heights[col]; h < rows; h++) {
+                    if (isThreatCell(bits[slot], col, h)) {
+                        int bit = col * stride + h;
+                        threats[slot][bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        }
+        staleThreats &= ~mask;
+        return threats[slot];
+    }
+
+    private boolean isThreatCell(long[] board, int col, int h) {
+        return countRun(board, col, h + 1, 0, 1) + countRun(board, col, h - 1, 0, -1) >= connect - 1
+                || countRun(board, col + 1, h, 1, 0) + countRun(board, col - 1, h, -1, 0) >= connect - 1
+                || countRun(board, col + 1, h + 1, 1, 1) + countRun(board, col - 1, h - 1, -1, -1) >= connect - 1
+                || countRun(board, col + 1, h - 1, 1, -1) + countRun(board, col - 1, h + 1, -1, 1) >= connect - 1;
+    }
+
+    private static long shiftRight(long value, int n) {
+        return n >= 64 ? 0L : value >>> n;
+    }
+
+    private static long shiftLeft(long value, int n) {
+        return n >= 64 ? 0L : value << n;
+    }
+
+    private int bitIndex(int row, int col) {
+        return col * stride + (rows - 1 - row);
+    }
+
+    private int slotAt(int bit) {
+        int w = bit >>> 6;
+        long m = 1L << bit;
+        for (int s = 0; s < tokenCount; s++) {
+            if ((bits[s][w] & m) != 0) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the bitboard slot of a token that has been dropped before.
+     *
+     * @return the slot, or -1 when the token has never been dropped
+     */
+    private int slotFor(char token) {
+        for (int s = 0; s < tokenCount; s++) {
+            if (tokens[s] == token) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the bitboard slot for a token, assigning a new slot the first time
+     * a token is dropped.
+     */
+    private int slotOf(char token) {
+        int slot = slotFor(token);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokenCount * 2);
+            bits = Arrays.copyOf(bits, tokenCount * 2);
+            threats = Arrays.copyOf(threats, tokenCount * 2);
+            for (int s = tokenCount; s < bits.length; s++) {
+                bits[s] = new long[words];
+                threats[s] = new long[words];
+            }
+        }
+        tokens[tokenCount] = token;
+        return tokenCount++;
     }
 
     /**
@@ -214,7 +666,7 @@ public class Board {
         System.out.println("-".repeat(cols * 2));
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                System.out.print("|" + grid[r][c]);
+                System.out.print("|" + getToken(r, c));
             }
             System.out.println("|");
         }
@@ -0,0 +1,238 @@
+package connectfour;
+
+/**
+ * Heuristic score of a position for the search, kept up to date move by
+ * move.
+ * <p>
+ * Every connect-N window on the board (every run of connect cells in a row,
+ * column or diagonal) is listed once when the evaluator is created, along
+ * with the windows each cell belongs to. Placing or removing a token only
+ * touches the windows through that cell, so {@link #add(int, int, char)},
+ * {@link #remove(int, int, char)} and {@link #score(char)} all run in time
+ * independent of the board size and never rescan the grid.
+ * </p>
+ * <p>
+ * The evaluator does not watch the board: whoever drops and undoes tokens
+ * on the board must make the matching add and remove calls.
+ * </p>
+ */
+public class Evaluator {
+
+    private static final int CENTER_WEIGHT = 3; // per token, per column closer to the center
+    private static final int PARITY_BONUS = 24; // threat on a row that favours its owner
+
+    private final int rows;
+    private final int cols;
+    private final int connect;
+    private final char first; // token that moved first and wins odd-row threats
+    private final char second;
+
+    private final int[] windowStart; // windowStart[cell] .. windowStart[cell + 1] index cellWindows
+    private final int[] cellWindows; // windows through each cell
+    private final int[] state; // per window, see windowState
+    private final int[] value; // window score for first, by state
+    private final int[] centerBonus; // per column
+    private int score; // from first's point of view
+
+    /**
+     * Create an evaluator for the current contents of a board.
+     *
+     * @param board  board to evaluate
+     * @param toMove token of the player to move
+     * @param other  token of the other player
+     */
+    public Evaluator(Board board, char toMove, char other) {
+        this.rows = board.getRows();
+        this.cols = board.getCols();
+        this.connect = board.getConnect();
+        boolean toMoveFirst = board.getMoveCount() % 2 == 0;
+        this.first = toMoveFirst ? toMove : other;
+        this.second = toMoveFirst ? other : toMove;
+
+        int cells = rows * cols;
+        int[][] directions = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } }; // {dc, dh}
+        int windows = 0;
+        int[] perCell = new int[cells];
+        for (int[] d : directions) {
+            for (int col = 0; col < cols; col++) {
+                for (int h = 0; h < rows; h++) {
+                    if (fits(col, h, d)) {
+                        windows++;
+                        for (int k = 0; k < connect; k++) {
+                            perCell[cell(col + k * d[0], h + k * d[1])]++;
+                        }
+                    }
+                }
+            }
+        }
+
+        windowStart = new int[cells + 1];
+        for (int c = 0; c < cells; c++) {
+            windowStart[c + 1] = windowStart[c] + perCell[c];
+        }
+        cellWindows = new int[windowStart[cells]];
+        state = new int[windows];
+        int[] next = windowStart.clone();
+        int w = 0;
+        for (int[] d : directions) {
+            for (int col = 0; col < cols; col++) {
+                for (int h = 0; h < rows; h++) {
+                    if (fits(col, h, d)) {
+                        for (int k = 0; k < connect; k++) {
+                            int c = cell(col + k * d[0], h + k * d[1]);
+                            cellWindows[next[c]++] = w;
+                            state[w] ^= parity(c);
+                        }
+                        w++;
+                    }
+                }
+            }
+        }
+
+        value = new int[2 * (connect + 1) * (connect + 1)];
+        for (int n = 1; n < connect; n++) {
+            int weight = 1 << (2 * (n - 1)); // 1, 4, 16, ...
+            value[windowState(n, 0, 0)] = value[windowState(n, 0, 1)] = weight;
+            value[windowState(0, n, 0)] = value[windowState(0, n, 1)] = -weight;
+        }
+        // a threat earns the bonus when its empty cell lies on its owner's rows
+        value[windowState(connect - 1, 0, 0)] += PARITY_BONUS;
+        value[windowState(0, connect - 1, 1)] -= PARITY_BONUS;
+        centerBonus = new int[cols];
+        for (int col = 0; col < cols; col++) {
+            centerBonus[col] = CENTER_WEIGHT * (cols / 2 - Math.min(Math.abs(col - (cols - 1) / 2),
+                    Math.abs(col - cols / 2)));
+        }
+
+        for (int col = 0; col < cols; col++) {
+            for (int h = 0; h < board.getHeight(col); h++) {
+                int row = rows - 1 - h;
+                char token = board.getToken(row, col);
+                if (token == first || token == second) {
+                    add(row, col, token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a token dropped on the board.
+     *
+     * @param row   row index of the new token
+     * @param col   column index of the new token
+     * @param token token that was dropped
+     */
+    public void add(int row, int col, char token) {
+        int c = cell(col, rows - 1 - row);
+        int step = (token == first) ? 2 : 2 * (connect + 1);
+        int flip = parity(c);
+        int delta = 0;
+        for (int i = windowStart[c]; i < windowStart[c + 1]; i++) {
+            int w = cellWindows[i];
+            int s = state[w];
+            int next = (s + step) ^ flip;
+            delta += value[next] - value[s];
+            state[w] = next;
+        }
+        score += (token == first) ? delta + centerBonus[col] : delta - centerBonus[col];
+    }
+
+    /**
+     * Record a token taken back from the board.
+     *
+     * @param row   row index of the removed token
+     * @param col   column index of the removed token
+     * @param token token that was removed
+     */
+    public void remove(int row, int col, char token) {
+        int c = cell(col, rows - 1 - row);
+        int step = (token == first) ? 2 : 2 * (connect + 1);
+        int flip = parity(c);
+        int delta = 0;
+        for (int i = windowStart[c]; i < windowStart[c + 1]; i++) {
+            int w = cellWindows[i];
+            int s = state[w];
+            int next = (s - step) ^ flip;
+            delta += value[next] - value[s];
+            state[w] = next;
+        }
+        score += (token == first) ? delta - centerBonus[col] : delta + centerBonus[col];
+    }
+
+    /**
+     * Returns the score the position would have after dropping a token,
+     * without recording the drop. Cheaper than add, score and remove when
+     * the new position is only scored, as at the last ply of a search.
+     *
+     * @param row   row index the token would land in
+     * @param col   column index the token would land in
+     * @param token token that would be dropped, and the point of view
+     * @return positive when the new position favours {@code token}
+     */
+    public int scoreWith(int row, int col, char token) {
+        int c = cell(col, rows - 1 - row);
+        int step = (token == first) ? 2 : 2 * (connect + 1);
+        int flip = parity(c);
+        int delta = 0;
+        for (int i = windowStart[c]; i < windowStart[c + 1]; i++) {
+            int w = cellWindows[i];
+            int s = state[w];
+            delta += value[(s + step) ^ flip] - value[s];
+        }
+        return (token == first) ? score + delta + centerBonus[col] : -(score + delta - centerBonus[col]);
+    }
+
+    /**
+     * Returns the heuristic score of the position.
+     *
+     * @param token player whose point of view to score from
+     * @return positive when the position favours {@code token}
+     */
+    public int score(char token) {
+        return (token == first) ? score : -score;
+    }
+
+    /**
+     * Explanation of the score:
+     *
+     * - A window holding tokens of both players can never be completed and
+     * is worth nothing. A window holding n tokens of one player only is
+     * worth 4^(n-1) to that player, so open twos count for more than single
+     * tokens and open threes for much more.
+     *
+     * - A window one token short of complete is a threat on its empty cell.
+     * In connect-4 the first player can usually only cash in threats on
+     * odd rows counted from the bottom and the second player on even rows,
+     * because the board fills up two tokens per round. Such a threat earns
+     * an extra PARITY_BONUS for its owner.
+     *
+     * - Each token also earns CENTER_WEIGHT for every column it is closer
+     * to the middle than the edge, since central tokens take part in the
+     * most windows.
+     *
+     * - Each window's state is one int: both players' token counts, times
+     * two, plus the parity of the number of its empty cells on even rows
+     * (h odd). Once one cell is left empty that bit is simply that cell's
+     * row parity, so the threat bonus needs no search of the window. A
+     * token changes a state by a fixed step and flips the bit on its own
+     * row's parity, and a window's score is a single table lookup, so the
+     * running total only needs each touched window's score before and after.
+     */
+    private int windowState(int firstCount, int secondCount, int emptyParity) {
+        return 2 * (firstCount + secondCount * (connect + 1)) + emptyParity;
+    }
+
+    private int parity(int cell) {
+        return (cell % rows) & 1;
+    }
+
+    private boolean fits(int col, int h, int[] d) {
+        int endCol = col + (connect - 1) * d[0];
+        int endH = h + (connect - 1) * d[1];
+        return endCol >= 0 && endCol < cols && endH >= 0 && endH < rows;
+    }
+
+    private int cell(int col, int h) {
+        return col * rows + h;
+    }
+}
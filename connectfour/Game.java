@@ -1,5 +1,7 @@
 package connectfour;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -20,6 +22,7 @@ public class Game {
     private static int ROWS = 6;
     private static int COLS = 7;
     private static int CONNECT = 4;
+    private static final int STANDINGS_PAGE_SIZE = 20;
 
     private Board board;
     private MoveStack undoStack;
@@ -27,12 +30,21 @@ public class Game {
     private Scanner scanner;
     private PlayerManager playerManager;
     private Tournament currentTournament;
+    private TournamentRunner tournamentRunner;
 
     private boolean vsAI = false;
     private char aiToken;
     private char humanToken;
     private char turnToken;
     private AIPlayer aiPlayer;
+    private Rating aiRating; // fixed rating of the AI level being played
+    private OpeningBook book;
+    private boolean bookChecked = false;
+    private boolean ponder = false;
+    private Ponderer ponderer;
+    private boolean lastPondered = false;
+    private boolean searchStats = false;
+    private SearchStats moveStats;
 
     private boolean keepPlaying = true;
 
@@ -52,6 +64,16 @@ public class Game {
         turnQueue.enqueue(new Player("Player 2", 'O'));
     }
 
+    /**
+     * Save all player data and close its files. Safe to call more than
+     * once, and from a shutdown hook while the game loop still runs.
+     */
+    public void close() {
+        if (!playerManager.close()) {
+            System.err.println("Player data could not be saved; the latest results are lost.");
+        }
+    }
+
     /**
      * Print the interactive command help to standard output.
      */
@@ -71,18 +93,43 @@ public class Game {
         System.out.println("  logout                       -> log out current user");
         System.out.println("  whoami                       -> show current user");
         System.out.println("  profile <name>               -> show player stats");
-        System.out.println("  leaderboard top <N>          -> show top N players");
+        System.out.println("  leaderboard top <N> [order]  -> show top N players by rating, wins, winrate, aiwins or draws");
+        System.out.println("  leaderboard rank [order]     -> show your place on the leaderboard");
+        System.out.println("  ratings batch on|off         -> rate games in periods instead of one by one");
+        System.out.println("  ratings close                -> close the rating period and rate its games");
+        System.out.println("  saving                       -> show when player data is saved");
+        System.out.println("  saving interval <ms>         -> save changes at most <ms> after they happen (default 200)");
+        System.out.println("  saving batch <N>             -> save as soon as N changes are waiting (default 32)");
+        System.out.println("  saving fsync always|second|never");
+        System.out.println("                               -> how often saved data is forced to disk");
         System.out.println("  hint                         -> show a suggested move");
         System.out.println();
         System.out.println("Game Modes Available");
         System.out.println("  game start human [X O]       -> start you vs another person");
-        System.out.println("  game start ai <level>        -> start you vs AI (easy/random|med|hard)");
+        System.out.println("  game start ai <level>        -> start you vs AI (easy/random|med|hard|perfect|mcts)");
+        System.out.println("  game start ai hard <d> [ms] [threads]");
+        System.out.println("                               -> hard AI searching <d> plies, or until [ms] per move,");
+        System.out.println("                                  on [threads] threads");
+        System.out.println("  game start ai mcts [ms] [threads]");
+        System.out.println("                               -> Monte Carlo tree search AI thinking [ms] per move");
+        System.out.println("  ponder on|off                -> let the hard AI think during your turn");
+        System.out.println("  searchstats [on|off]         -> show, or switch on/off, the hard AI's search statistics");
         System.out.println();
         System.out.println("Tournament Commands");
         System.out.println("  tournament create <id> <p1>...      -> Create a tournament group (Ex: 't1 Patrick Dante Jaksh')");
         System.out.println("  tournament start <id>               -> Finalize players and build the match schedule");
+        System.out.println("  tournament start <id> swiss [rounds]-> Play a Swiss system instead (default log2(players) rounds)");
+        System.out.println("  tournament start <id> knockout      -> Play a single-elimination bracket instead");
+        System.out.println("  tournament start <id> <round> <pairing>");
+        System.out.println("                                      -> Resume the schedule at a checkpoint");
+        System.out.println("  tournament checkpoint <id>          -> Show where the schedule stands");
         System.out.println("  next                                -> Simulate the next match in the schedule");
+        System.out.println("  tournament run <id> [threads]       -> Play all scheduled matches in the background");
         System.out.println("  tournament standings <id>           -> View the tournament leaderboard");
+        System.out.println("  tournament standings <id> top <N>   -> View the first N places");
+        System.out.println("  tournament standings <id> page <P> [size]");
+        System.out.println("                                      -> View page P of the leaderboard (20 places per page)");
+        System.out.println("  tournament rank <id> <player>       -> Show a player's place");
     }
 
     /**
@@ -148,14 +195,79 @@ public class Game {
                 } else if (cmd.equals("profile") && parts.length == 2) {
                     playerManager.profile(parts[1]);
 
-                } else if (cmd.equals("leaderboard") && parts.length == 3 && parts[1].equals("top")) {
+                } else if (cmd.equals("ratings") && parts.length == 3 && parts[1].equals("batch")
+                        && (parts[2].equals("on") || parts[2].equals("off"))) {
+                    playerManager.getRatings().setBatch(parts[2].equals("on"));
+                    if (parts[2].equals("on")) {
+                        System.out.println("Ratings now change when the period is closed with 'ratings close'.");
+                    } else {
+                        playerManager.save();
+                        System.out.println("Ratings now change after every game.");
+                    }
+
+                } else if (cmd.equals("ratings") && parts.length == 2 && parts[1].equals("close")) {
+                    int rated = playerManager.getRatings().closePeriod();
+                    playerManager.save();
+                    System.out.println("Rating period closed: " + rated + " players rated.");
+
+                } else if (cmd.equals("saving") && parts.length == 1) {
+                    PlayerWriter writer = playerManager.getWriter();
+                    System.out.println("Player data is saved within " + writer.getInterval() + " ms or every "
+                            + writer.getBatchSize() + " changes; fsync " + writer.getSync().getKey() + ".");
+
+                } else if (cmd.equals("saving") && parts.length == 3
+                        && (parts[1].equals("interval") || parts[1].equals("batch"))) {
+                    try {
+                        int value = Integer.parseInt(parts[2]);
+                        if (parts[1].equals("interval")) {
+                            playerManager.getWriter().setInterval(value);
+                        } else {
+                            playerManager.getWriter().setBatchSize(value);
+                        }
+                        System.out.println("Saving " + parts[1] + " set to " + value + ".");
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid number for saving " + parts[1] + ".");
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(e.getMessage());
+                    }
+
+                } else if (cmd.equals("saving") && parts.length == 3 && parts[1].equals("fsync")) {
+                    PlayerWriter.Sync sync = PlayerWriter.Sync.parse(parts[2]);
+                    if (sync == null) {
+                        System.out.println("Unknown fsync policy. Use always, second or never.");
+                    } else {
+                        playerManager.getWriter().setSync(sync);
+                        System.out.println("Saved player data is now forced to disk "
+                                + (sync == PlayerWriter.Sync.ALWAYS ? "after every save."
+                                        : sync == PlayerWriter.Sync.EVERY_SECOND ? "at most once a second."
+                                                : "only on quit."));
+                    }
+
+                } else if (cmd.equals("leaderboard") && (parts.length == 3 || parts.length == 4)
+                        && parts[1].equals("top")) {
+                    Leaderboard.Order order = (parts.length == 4) ? Leaderboard.Order.parse(parts[3])
+                            : Leaderboard.Order.RATING;
+                    if (order == null) {
+                        System.out.println("Unknown leaderboard order. Use rating, wins, winrate, aiwins or draws.");
+                        continue;
+                    }
                     try {
                         int topN = Integer.parseInt(parts[2]);
-                        playerManager.leaderboard(topN);
+                        playerManager.leaderboard(topN, order);
                     } catch (NumberFormatException e) {
                         System.out.println("Invalid number for leaderboard.");
                     }
 
+                } else if (cmd.equals("leaderboard") && (parts.length == 2 || parts.length == 3)
+                        && parts[1].equals("rank")) {
+                    Leaderboard.Order order = (parts.length == 3) ? Leaderboard.Order.parse(parts[2])
+                            : Leaderboard.Order.RATING;
+                    if (order == null) {
+                        System.out.println("Unknown leaderboard order. Use rating, wins, winrate, aiwins or draws.");
+                        continue;
+                    }
+                    playerManager.rank(order);
+
                 } else if (cmd.equals("game") && parts.length >= 2 && parts[1].equals("start")) {
                     if (parts.length >= 3 && parts[2].equals("human")) {
                         vsAI = false;
@@ -171,11 +283,53 @@ public class Game {
                         restart();
                     } else if (parts.length >= 3 && parts[2].equals("ai")) {
                         String level = (parts.length >= 4) ? parts[3] : "med";
-                        startAI(level, 'X');
+                        boolean mcts = level.equalsIgnoreCase("mcts");
+                        int depth = HardAI.DEFAULT_DEPTH;
+                        long moveTime = mcts ? MCTSAI.DEFAULT_MOVE_MILLIS : 0;
+                        int threads = mcts ? Runtime.getRuntime().availableProcessors() : 1;
+                        int next = mcts ? 4 : 5; // mcts takes no depth
+                        try {
+                            if (!mcts && parts.length >= 5)
+                                depth = Integer.parseInt(parts[4]);
+                            if (parts.length >= next + 1)
+                                moveTime = Long.parseLong(parts[next]);
+                            if (parts.length >= next + 2)
+                                threads = Integer.parseInt(parts[next + 1]);
+                        } catch (NumberFormatException e) {
+                            depth = 0;
+                        }
+                        if (depth < 1 || moveTime < 0 || threads < 1) {
+                            System.out.println("Invalid search depth, time or thread count.");
+                        } else {
+                            startAI(level, 'X', depth, moveTime, threads);
+                        }
                     } else {
                         System.out.println("Invalid game command.");
                     }
 
+                } else if (cmd.equals("ponder") && parts.length == 2
+                        && (parts[1].equals("on") || parts[1].equals("off"))) {
+                    ponder = parts[1].equals("on");
+                    if (ponder) {
+                        startPondering();
+                    } else {
+                        stopPondering();
+                    }
+                    System.out.println("Pondering is " + parts[1] + ".");
+
+                } else if (cmd.equals("searchstats") && parts.length == 2
+                        && (parts[1].equals("on") || parts[1].equals("off"))) {
+                    searchStats = parts[1].equals("on");
+                    if (aiPlayer instanceof HardAI hard) {
+                        stopPondering(); // the ponder thread may be searching with the old setting
+                        hard.setStatsEnabled(searchStats);
+                        startPondering();
+                    }
+                    System.out.println("Search statistics are " + parts[1] + ".");
+
+                } else if (cmd.equals("searchstats") && parts.length == 1) {
+                    printSearchStats();
+
                 } else if (cmd.equals("startai") && parts.length == 3) {
                     String level = parts[1].toLowerCase();
                     char token = Character.toUpperCase(parts[2].charAt(0));
@@ -193,28 +347,151 @@ public class Game {
                         for (int i = 3; i < parts.length; i++) {
                             players.add(parts[i].replace(",", ""));
                         }
-                        currentTournament = new Tournament(id, players);
+                        currentTournament = new Tournament(id, players, playerManager);
                         System.out.println("Tournament " + id + " created.");
-                    } else if (parts.length == 3 && parts[1].equals("start")) {
-                        if (currentTournament != null && currentTournament.getId().equals(parts[2])) {
+                    } else if (parts.length >= 3 && parts.length <= 5 && parts[1].equals("start")) {
+                        if (currentTournament == null || !currentTournament.getId().equals(parts[2])) {
+                            System.out.println("Either there's no tournament or ID mismatch.");
+                        } else if (tournamentRunner != null && tournamentRunner.isRunning()) {
+                            System.out.println("The tournament is running.");
+                        } else if (parts.length == 3) {
                             currentTournament.scheduleMatches();
                             System.out.println("A tournament is now scheduled.");
+                        } else if (parts[3].equals("swiss")) {
+                            List<String> players = currentTournament.getPlayers();
+                            int rounds;
+                            try {
+                                rounds = (parts.length == 5) ? Integer.parseInt(parts[4])
+                                        : SwissFormat.defaultRounds(players.size());
+                            } catch (NumberFormatException e) {
+                                rounds = 0;
+                            }
+                            if (rounds < 1) {
+                                System.out.println("Invalid number of rounds. Usage: tournament start "
+                                        + parts[2] + " swiss [rounds]");
+                                continue;
+                            }
+                            currentTournament.scheduleMatches(new SwissFormat(players, rounds));
+                            System.out.println("A Swiss tournament of " + rounds + " rounds is now scheduled.");
+                        } else if (parts[3].equals("knockout")) {
+                            if (parts.length != 4) {
+                                System.out.println("A knockout takes no arguments. Usage: tournament start "
+                                        + parts[2] + " knockout");
+                                continue;
+                            }
+                            currentTournament.scheduleMatches(new KnockoutFormat(currentTournament.getPlayers()));
+                            System.out.println("A knockout tournament is now scheduled.");
+                        } else if (parts.length == 4) {
+                            System.out.println("Unknown tournament format: " + parts[3]);
+                        } else {
+                            int round;
+                            int pairing;
+                            try {
+                                round = Integer.parseInt(parts[3]);
+                                pairing = Integer.parseInt(parts[4]);
+                            } catch (NumberFormatException e) {
+                                System.out.println("Invalid round or pairing. Usage: tournament start "
+                                        + parts[2] + " <round> <pairing>");
+                                continue;
+                            }
+                            currentTournament.scheduleMatches(new RoundRobinSchedule.Checkpoint(round - 1, pairing - 1));
+                            System.out.println("The schedule resumes at round " + round + ", pairing " + pairing + ".");
+                        }
+                    } else if (parts.length == 3 && parts[1].equals("checkpoint")) {
+                        if (currentTournament == null || !currentTournament.getId().equals(parts[2])) {
+                            System.out.println("Either there's no tournament or ID mismatch.");
+                        } else if (currentTournament.getFormat() == null) {
+                            System.out.println("The tournament has not been started.");
+                        } else if (currentTournament.getCheckpoint() == null) {
+                            System.out.println("Only a round robin can be resumed from a checkpoint.");
                         } else {
+                            RoundRobinSchedule.Checkpoint at = currentTournament.getCheckpoint();
+                            System.out.println("Next match: round " + (at.round() + 1) + ", pairing " + (at.pair() + 1)
+                                    + " (" + currentTournament.remainingMatches() + " matches left). Resume with "
+                                    + "'tournament start " + parts[2] + " " + (at.round() + 1) + " "
+                                    + (at.pair() + 1) + "'.");
+                        }
+                    } else if ((parts.length == 3 || parts.length == 4) && parts[1].equals("run")) {
+                        int threads;
+                        try {
+                            threads = (parts.length == 4) ? Integer.parseInt(parts[3])
+                                    : Runtime.getRuntime().availableProcessors();
+                        } catch (NumberFormatException e) {
+                            threads = 0;
+                        }
+                        if (threads < 1) {
+                            System.out.println("Invalid thread count. Usage: tournament run " + parts[2]
+                                    + " [threads]");
+                        } else if (currentTournament == null || !currentTournament.getId().equals(parts[2])) {
                             System.out.println("Either there's no tournament or ID mismatch.");
+                        } else if (tournamentRunner != null && tournamentRunner.isRunning()) {
+                            System.out.println("The tournament is already running.");
+                        } else if (!currentTournament.hasNextMatch()) {
+                            System.out.println("Currently no scheduled matches.");
+                        } else {
+                            tournamentRunner = new TournamentRunner(currentTournament, threads);
+                            tournamentRunner.start();
+                            System.out.println("Playing " + tournamentRunner.getTotal() + " matches on " + threads
+                                    + " threads. Type 'tournament standings " + parts[2] + "' to follow along.");
+                        }
+                    } else if (parts.length >= 3 && parts.length <= 6 && parts[1].equals("standings")) {
+                        if (currentTournament != null && currentTournament.getId().equals(parts[2])) {
+                            if (tournamentRunner != null && tournamentRunner.isRunning()) {
+                                System.out.printf("Running: %d of %d matches played (%.1f s)%n",
+                                        tournamentRunner.getPlayed(), tournamentRunner.getTotal(),
+                                        tournamentRunner.getElapsedSeconds());
+                            }
+                            if (parts.length == 3) {
+                                currentTournament.printStandings();
+                            } else if (parts.length == 5 && parts[3].equals("top")) {
+                                int topN;
+                                try {
+                                    topN = Integer.parseInt(parts[4]);
+                                } catch (NumberFormatException e) {
+                                    topN = 0;
+                                }
+                                if (topN < 1) {
+                                    System.out.println("Invalid number of places. Usage: tournament standings "
+                                            + parts[2] + " top <N>");
+                                } else {
+                                    currentTournament.printStandings(0, topN);
+                                }
+                            } else if ((parts.length == 5 || parts.length == 6) && parts[3].equals("page")) {
+                                int page;
+                                int size;
+                                try {
+                                    page = Integer.parseInt(parts[4]);
+                                    size = (parts.length == 6) ? Integer.parseInt(parts[5]) : STANDINGS_PAGE_SIZE;
+                                } catch (NumberFormatException e) {
+                                    page = 0;
+                                    size = 0;
+                                }
+                                if (page < 1 || size < 1) {
+                                    System.out.println("Page and page size must be at least 1. Usage: tournament "
+                                            + "standings " + parts[2] + " page <P> [size]");
+                                } else {
+                                    currentTournament.printStandings((int) Math.min((long) (page - 1) * size,
+                                            Integer.MAX_VALUE), size);
+                                }
+                            } else {
+                                System.out.println("Invalid standings command.");
+                            }
+                        } else {
+                            System.out.println("There's no tournament.");
                         }
-                    } else if (parts.length == 3 && parts[1].equals("standings")) {
+                    } else if (parts.length == 4 && parts[1].equals("rank")) {
                         if (currentTournament != null && currentTournament.getId().equals(parts[2])) {
-                            currentTournament.printStandings();
+                            currentTournament.printRank(parts[3]);
                         } else {
                             System.out.println("There's no tournament.");
                         }
                     }
 
                 } else if (cmd.equals("next")) {
-                    if (currentTournament != null && currentTournament.hasNextMatch()) {
-                        Match m = currentTournament.getNextMatch();
+                    Match m = (currentTournament == null) ? null : currentTournament.getNextMatch();
+                    if (m != null) {
                         System.out.println("Simulating match: " + m);
-                        String winner = simulateMatch(m);
+                        String winner = TournamentRunner.playMatch(m);
                         System.out.println("Winner: " + winner);
                         String loser = winner.equals(m.player1) ? m.player2 : m.player1;
                         currentTournament.recordMatchResult(winner, loser);
@@ -230,6 +507,7 @@ public class Game {
 
                 } else if (cmd.equals("restart")) {
                     restart();
+                    startPondering();
 
                 } else if (cmd.equals("undo")) {
                     handleUndo();
@@ -242,6 +520,9 @@ public class Game {
                     new Hint(board, currentPlayer.token(), opponent.token()).print();
 
                 } else if (cmd.equals("quit")) {
+                    stopPondering();
+                    playerManager.save(); // tournament matches rate registered players without saving
+                    close();
                     keepPlaying = false;
                     System.out.println("Goodbye!");
 
@@ -256,35 +537,6 @@ public class Game {
 
     }
 
-    private String simulateMatch(Match m) {
-        Board simBoard = new Board(ROWS, COLS, CONNECT);
-        AIPlayer p1AI = new HardAI();
-        AIPlayer p2AI = new HardAI();
-        char p1Token = 'X';
-        char p2Token = 'O';
-        int maxMoves = ROWS * COLS;
-
-        for (int i = 0; i < maxMoves; i++) {
-            // Player 1
-            int c1 = p1AI.chooseMove(simBoard, p1Token, p2Token);
-            int r1 = simBoard.drop(c1, p1Token);
-            if (simBoard.isWinningMove(r1, c1))
-                return m.player1;
-            if (simBoard.isFull())
-                break;
-
-            // Player 2
-            int c2 = p2AI.chooseMove(simBoard, p2Token, p1Token);
-            int r2 = simBoard.drop(c2, p2Token);
-            if (simBoard.isWinningMove(r2, c2))
-                return m.player2;
-            if (simBoard.isFull())
-                break;
-        }
-
-        return Math.random() < 0.5 ? m.player1 : m.player2;
-    }
-
     /**
      * Handle a drop action for the current player into the specified
      * column. Validates the column and updates the board, undo stack and
@@ -312,18 +564,14 @@ public class Game {
         if (board.isWinningMove(row, col)) {
             System.out.println(current.name() + " wins!");
             if (playerManager.getCurrentPlayer() != null) {
-                if (vsAI) {
-                    playerManager.getCurrentPlayer().recordResult(true, 1);
-                } else {
-                    playerManager.getCurrentPlayer().recordResult(false, 1);
-                }
+                playerManager.recordResult(vsAI, 1, vsAI ? aiRating : null);
                 playerManager.save();
             }
             keepPlaying = false;
         } else if (board.isFull()) {
             System.out.println("It's a draw");
             if (playerManager.getCurrentPlayer() != null) {
-                playerManager.getCurrentPlayer().recordResult(vsAI, 0);
+                playerManager.recordResult(vsAI, 0, vsAI ? aiRating : null);
                 playerManager.save();
             }
             keepPlaying = false;
@@ -331,29 +579,37 @@ public class Game {
         }
 
         if (vsAI && current.token() == humanToken && keepPlaying) {
-            int aiMove = aiPlayer.chooseMove(board, aiToken, humanToken);
+            int aiMove = (ponderer != null) ? ponderer.take(board) : -1;
+            lastPondered = aiMove >= 0;
+            if (!lastPondered) {
+                aiMove = aiPlayer.chooseMove(board, aiToken, humanToken);
+            }
             int aiRow = board.drop(aiMove, aiToken);
             undoStack.push(new Move(aiRow, aiMove, aiToken));
-            System.out.println("The AI moved at column " + aiMove);
+            moveStats = lastMoveStats();
+            System.out.println("The AI moved at column " + aiMove + searchInfo());
             board.print();
 
             if (board.isWinningMove(aiRow, aiMove)) {
                 System.out.println("The AI wins! The robots will take over.");
                 if (playerManager.getCurrentPlayer() != null) {
-                    playerManager.getCurrentPlayer().recordResult(true, -1);
+                    playerManager.recordResult(true, -1, aiRating);
                     playerManager.save();
                 }
                 keepPlaying = false;
             } else if (board.isFull()) {
                 System.out.println("It's a draw. Very impressive!");
                 if (playerManager.getCurrentPlayer() != null) {
-                    playerManager.getCurrentPlayer().recordResult(true, 0);
+                    playerManager.recordResult(true, 0, aiRating);
                     playerManager.save();
                 }
                 keepPlaying = false;
             }
+            startPondering();
         } else if (keepPlaying) {
             turnQueue.rotate();
+        } else {
+            stopPondering();
         }
     }
 
@@ -367,6 +623,7 @@ public class Game {
             return;
         }
 
+        stopPondering();
         Move last = undoStack.pop();
         board.undo(last.row(), last.col());
         turnQueue.rotate();
@@ -377,6 +634,101 @@ public class Game {
         }
 
         board.print();
+        startPondering();
+    }
+
+    /**
+     * Start searching the AI's replies in the background while the human
+     * thinks, when pondering is on and a hard AI game is in progress.
+     */
+    private void startPondering() {
+        if (ponder && ponderer != null && vsAI && keepPlaying) {
+            ponderer.start(board, aiToken, humanToken);
+        }
+    }
+
+    /**
+     * Stop any background search before the board changes underneath it.
+     */
+    private void stopPondering() {
+        if (ponderer != null) {
+            ponderer.cancel();
+        }
+    }
+
+    /**
+     * Map {@link OpeningBook#DEFAULT_FILE} the first time a hard AI is
+     * started.
+     *
+     * @return the opening book, or null when there is none
+     */
+    private OpeningBook openingBook() {
+        if (!bookChecked) {
+            bookChecked = true;
+            if (new File(OpeningBook.DEFAULT_FILE).exists()) {
+                try {
+                    book = OpeningBook.open(OpeningBook.DEFAULT_FILE);
+                } catch (IOException e) {
+                    System.out.println("Failed to open the opening book.");
+                }
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Returns the statistics of the search behind the AI's move just played.
+     * Read them before pondering starts, which overwrites the AI's own.
+     */
+    private SearchStats lastMoveStats() {
+        if (!(aiPlayer instanceof HardAI hard))
+            return null;
+        return lastPondered ? ponderer.getLastStats() : hard.getLastStats();
+    }
+
+    /**
+     * Print the statistics of the hard AI's last search, for the
+     * searchstats command.
+     */
+    private void printSearchStats() {
+        if (!(aiPlayer instanceof HardAI)) {
+            System.out.println("Search statistics are only kept for the hard AI.");
+        } else if (!searchStats) {
+            System.out.println("Search statistics are off. Type 'searchstats on' to collect them.");
+        } else if (moveStats == null) {
+            System.out.println("No search statistics yet (the AI has not searched a move since they were turned on).");
+        } else {
+            System.out.println("Last AI search" + (lastPondered ? " (pondered)" : "") + ":");
+            System.out.println(moveStats);
+        }
+    }
+
+    /**
+     * Describe how deep the AI searched its last move, for AIs that search.
+     *
+     * @return text to append to the AI move message, possibly empty
+     */
+    private String searchInfo() {
+        if (aiPlayer instanceof HardAI hard) {
+            if (lastPondered)
+                return " (pondered, searched " + ponderer.getLastDepth() + " plies)";
+            if (hard.wasLastMoveFromBook())
+                return " (opening book)";
+            return " (searched " + hard.getLastDepth() + " plies)";
+        }
+        if (aiPlayer instanceof SolverAI perfect && perfect.wasLastMoveSolved()) {
+            int score = perfect.getLastScore();
+            if (score == 0)
+                return " (solved: draw)";
+            int before = board.getMoveCount() - 1;
+            int endMove = before + Solver.pliesToEnd(score, before);
+            return " (solved: " + (score > 0 ? "AI wins" : "AI loses") + " by move " + endMove + ")";
+        }
+        if (aiPlayer instanceof MCTSAI mcts && mcts.getPlayoutCount() > 0) {
+            return " (" + mcts.getPlayoutCount() + " playouts, " + Math.round(mcts.getLastWinRate() * 100)
+                    + "% wins)";
+        }
+        return "";
     }
 
     /**
@@ -386,6 +738,7 @@ public class Game {
      */
 
     private void restart() {
+        stopPondering();
         board.clear();
         undoStack.clear();
         System.out.println("The board is now cleared. New game started!");
@@ -394,6 +747,21 @@ public class Game {
     }
 
     public void startAI(String level, char playerToken) {
+        startAI(level, playerToken, HardAI.DEFAULT_DEPTH, 0, 1);
+    }
+
+    /**
+     * Start a human vs AI game.
+     *
+     * @param level       AI level name (easy, med, hard, perfect or mcts)
+     * @param playerToken token used by the human player
+     * @param depth       maximum search depth in plies used by the hard AI
+     * @param moveTime    hard AI time budget per move in milliseconds, or 0
+     *                    to always search to {@code depth}; the MCTS AI's
+     *                    budget, or 0 for its default
+     * @param threads     number of threads the hard and MCTS AIs search with
+     */
+    public void startAI(String level, char playerToken, int depth, long moveTime, int threads) {
         vsAI = true;
         humanToken = playerToken;
         aiToken = (playerToken == 'X') ? 'O' : 'X';
@@ -411,13 +779,28 @@ public class Game {
                 aiPlayer = new MediumAI();
                 break;
             case "hard":
-                aiPlayer = new HardAI();
+                HardAI hard = new HardAI(depth, HardAI.DEFAULT_TABLE_MB, moveTime, threads);
+                hard.setOpeningBook(openingBook());
+                aiPlayer = hard;
+                break;
+            case "perfect":
+                aiPlayer = new SolverAI();
+                break;
+            case "mcts":
+                aiPlayer = new MCTSAI(0, (moveTime > 0) ? moveTime : MCTSAI.DEFAULT_MOVE_MILLIS, threads);
                 break;
             default:
                 System.out.println("Unknown AI level: " + level);
                 vsAI = false;
                 return;
         }
+        aiRating = RatingSystem.aiRating(level);
+        if (aiPlayer instanceof HardAI hard) {
+            hard.setStatsEnabled(searchStats);
+        }
+        ponderer = (aiPlayer instanceof HardAI hard) ? new Ponderer(hard) : null;
+        lastPondered = false;
+        moveStats = null;
 
         System.out.println("Starting game vs AI (" + level + ")");
 
@@ -425,7 +808,8 @@ public class Game {
             int aiMove = aiPlayer.chooseMove(board, aiToken, humanToken);
             int aiRow = board.drop(aiMove, aiToken);
             undoStack.push(new Move(aiRow, aiMove, aiToken));
-            System.out.println("THe AI moved at column " + aiMove);
+            moveStats = lastMoveStats();
+            System.out.println("THe AI moved at column " + aiMove + searchInfo());
 
             if (board.isWinningMove(aiRow, aiMove)) {
                 System.out.println("The AI wins!");
@@ -437,5 +821,6 @@ public class Game {
 
             turnToken = humanToken;
         }
+        startPondering();
     }
 }
\ No newline at end of file
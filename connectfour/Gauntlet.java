@@ -0,0 +1,500 @@
+package connectfour;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether a candidate engine is stronger than a baseline engine
+ * with as few games as the evidence allows.
+ * <p>
+ * The engines play pairs of games on a {@link SelfPlay} batch: both games of
+ * a pair start from the same position of a suite of balanced openings, with
+ * the colours swapped. After every finished pair a sequential probability
+ * ratio test weighs the hypothesis that the candidate is {@code elo0}
+ * stronger than the baseline against the hypothesis that it is
+ * {@code elo1} stronger, and the batch stops as soon as either one is
+ * accepted at the configured error rates. The result reports the games
+ * played and the estimated Elo difference with its 95% error bar.
+ * </p>
+ * <p>
+ * Engines that always answer a position the same way replay the same pair
+ * once the suite runs out, which adds no evidence but still moves the
+ * test. The game limit is therefore two games per opening of the suite by
+ * default, and a larger limit is refused unless repeats are allowed with
+ * {@link #setRepeatOpenings(boolean)}.
+ * </p>
+ */
+public class Gauntlet {
+    public static final double DEFAULT_ELO0 = 0;
+    public static final double DEFAULT_ELO1 = 10;
+    public static final double DEFAULT_ALPHA = 0.05;
+    public static final double DEFAULT_BETA = 0.05;
+    public static final int GAMES_PER_OPENING = 2; // one pair, colours swapped
+    public static final int DEFAULT_OPENING_PLIES = 4;
+    public static final int DEFAULT_SCREEN_DEPTH = 6;
+    public static final int DEFAULT_MAX_OPENING_SCORE = 20;
+
+    private static final double PRIOR_PAIRS = 0.5; // per pentanomial count, see Test
+
+    private final Supplier<AIPlayer> candidate;
+    private final Supplier<AIPlayer> baseline;
+    private final int threads;
+    private double elo0 = DEFAULT_ELO0;
+    private double elo1 = DEFAULT_ELO1;
+    private double alpha = DEFAULT_ALPHA;
+    private double beta = DEFAULT_BETA;
+    private int maxGames; // 0: GAMES_PER_OPENING per opening of the suite
+    private boolean repeatOpenings;
+    private int[][] openings;
+
+    /**
+     * Outcome of the test.
+     */
+    public enum Decision {
+        /** The candidate is at least elo1 stronger. */
+        H1,
+        /** The candidate is at most elo0 stronger. */
+        H0,
+        /** The game limit was reached first. */
+        INCONCLUSIVE
+    }
+
+    /**
+     * Result of a gauntlet.
+     *
+     * @param decision accepted hypothesis
+     * @param games    games counted, always a whole number of pairs
+     * @param wins     candidate wins
+     * @param draws    draws
+     * @param losses   candidate losses
+     * @param elo      estimated Elo difference, positive when the candidate
+     *                 is stronger
+     * @param error    half-width of the 95% confidence interval of
+     *                 {@code elo}
+     * @param llr      final log-likelihood ratio
+     * @param lower    bound at which H0 is accepted
+     * @param upper    bound at which H1 is accepted
+     */
+    public record Result(Decision decision, int games, int wins, int draws, int losses, double elo,
+            double error, double llr, double lower, double upper) {
+
+        @Override
+        public String toString() {
+            return String.format("%s after %d games (+%d =%d -%d): Elo %+.1f +/- %.1f, LLR %.2f [%.2f, %.2f]",
+                    decision, games, wins, draws, losses, elo, error, llr, lower, upper);
+        }
+    }
+
+    /**
+     * Describe a gauntlet between two engines.
+     *
+     * @param candidate factory for the engine under test
+     * @param baseline  factory for the engine it is compared with
+     * @param threads   number of worker threads
+     */
+    public Gauntlet(Supplier<AIPlayer> candidate, Supplier<AIPlayer> baseline, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        this.candidate = candidate;
+        this.baseline = baseline;
+        this.threads = threads;
+    }
+
+    /**
+     * Set the Elo differences the test chooses between.
+     *
+     * @param elo0 difference of the null hypothesis
+     * @param elo1 difference of the alternative hypothesis, above elo0
+     */
+    public void setEloBounds(double elo0, double elo1) {
+        if (!(elo1 > elo0)) {
+            throw new IllegalArgumentException("elo1 must be greater than elo0.");
+        }
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+    }
+
+    /**
+     * Set the error rates of the test.
+     *
+     * @param alpha chance of accepting H1 when H0 holds
+     * @param beta  chance of accepting H0 when H1 holds
+     */
+    public void setErrorRates(double alpha, double beta) {
+        if (!(alpha > 0 && alpha < 0.5 && beta > 0 && beta < 0.5)) {
+            throw new IllegalArgumentException("Error rates must lie between 0 and 0.5.");
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Set the number of games after which the test gives up undecided.
+     * Unless repeats are allowed, the limit may not exceed
+     * {@link #GAMES_PER_OPENING} games per opening of the suite, which is
+     * also the default.
+     *
+     * @param maxGames game limit, rounded down to whole pairs
+     */
+    public void setMaxGames(int maxGames) {
+        if (maxGames < 2) {
+            throw new IllegalArgumentException("The game limit must allow at least one pair.");
+        }
+        this.maxGames = maxGames;
+    }
+
+    /**
+     * Allow a game limit above two games per opening, so that openings of
+     * the suite are played more than once.
+     *
+     * @param repeatOpenings whether openings may be replayed
+     */
+    public void setRepeatOpenings(boolean repeatOpenings) {
+        this.repeatOpenings = repeatOpenings;
+    }
+
+    /**
+     * Set the opening suite. Defaults to {@link #balancedOpenings} on the
+     * standard board.
+     *
+     * @param openings opening move lists, played alternately from the empty
+     *                 board
+     */
+    public void setOpenings(int[][] openings) {
+        if (openings == null || openings.length == 0) {
+            throw new IllegalArgumentException("The opening suite is empty.");
+        }
+        this.openings = openings;
+    }
+
+    /**
+     * Run the gauntlet on the standard 6x7 connect-4 board.
+     *
+     * @param progress called with the running result after every finished
+     *                 pair, from a worker thread; may be null
+     * @return the decision and the statistics it was based on
+     */
+    public Result run(Consumer<Result> progress) {
+        return run(6, 7, 4, progress);
+    }
+
+    /**
+     * Run the gauntlet.
+     *
+     * @param rows     board rows
+     * @param cols     board columns
+     * @param connect  connect length
+     * @param progress called with the running result after every finished
+     *                 pair, from a worker thread; may be null
+     * @return the decision and the statistics it was based on
+     * @throws IllegalArgumentException when the game limit would replay
+     *                                  openings and repeats are not allowed
+     */
+    public Result run(int rows, int cols, int connect, Consumer<Result> progress) {
+        int[][] suite = (openings != null) ? openings
+                : balancedOpenings(rows, cols, connect, DEFAULT_OPENING_PLIES, DEFAULT_SCREEN_DEPTH,
+                        DEFAULT_MAX_OPENING_SCORE);
+        int distinct = GAMES_PER_OPENING * suite.length;
+        int limit = (maxGames > 0) ? maxGames : distinct;
+        if (limit > distinct && !repeatOpenings) {
+            throw new IllegalArgumentException("A limit of " + limit + " games replays openings of the "
+                    + suite.length + "-opening suite; allow repeats to play more than " + distinct + " games.");
+        }
+        SelfPlay selfPlay = new SelfPlay(candidate, baseline, limit - limit % 2, rows, cols, connect, threads);
+        selfPlay.setOpenings(suite);
+        Test test = new Test(selfPlay, progress);
+        selfPlay.run(test::accept);
+        return test.result(true);
+    }
+
+    /**
+     * Explanation of the test:
+     *
+     * - Each pair is one sample: the candidate's mean score over its two
+     * games, one of 0, 1/4, 1/2, 3/4 or 1. Scoring pairs rather than games
+     * cancels most of the advantage of the opening and of moving first,
+     * which shrinks the variance and with it the games needed.
+     *
+     * - An Elo difference d corresponds to an expected score
+     * s = 1 / (1 + 10^(-d/400)). With the sample mean m and variance v of N
+     * pairs, the log-likelihood ratio of score s1 (elo1) against score s0
+     * (elo0) in the normal approximation is
+     * N * (s1 - s0) * (2m - s0 - s1) / (2v).
+     *
+     * - H1 is accepted once it reaches ln((1 - beta) / alpha), H0 once it
+     * falls to ln(beta / (1 - alpha)); in between another pair is played.
+     * Every pair count starts at PRIOR_PAIRS instead of 0, a small prior
+     * centred on an even score. Without it a run of identical pairs, such
+     * as a clean sweep, would have zero variance and an infinite ratio
+     * after the first pair; with it the test needs a handful of pairs to
+     * believe a sweep, and the prior is soon outweighed otherwise. The Elo
+     * estimate itself uses the raw counts.
+     *
+     * - Pairs are counted in the order they finish. When the test decides,
+     * the batch is stopped and the result is frozen, so games still being
+     * played at that moment do not change it.
+     */
+    private class Test {
+        private final SelfPlay selfPlay;
+        private final Consumer<Result> progress;
+        private final Map<Integer, SelfPlay.GameResult> unpaired = new HashMap<>();
+        private final int[] pentanomial = new int[5]; // pairs by candidate half points, 0..4
+        private int wins;
+        private int draws;
+        private int losses;
+        private Result decided;
+
+        Test(SelfPlay selfPlay, Consumer<Result> progress) {
+            this.selfPlay = selfPlay;
+            this.progress = progress;
+        }
+
+        void accept(SelfPlay.GameResult game) {
+            Result running;
+            synchronized (this) {
+                if (decided != null)
+                    return;
+                SelfPlay.GameResult partner = unpaired.remove(game.game() / 2);
+                if (partner == null) {
+                    unpaired.put(game.game() / 2, game);
+                    return;
+                }
+                pentanomial[game.outcome() + partner.outcome() + 2]++;
+                for (SelfPlay.GameResult r : new SelfPlay.GameResult[] { game, partner }) {
+                    if (r.outcome() > 0)
+                        wins++;
+                    else if (r.outcome() < 0)
+                        losses++;
+                    else
+                        draws++;
+                }
+                running = result(false);
+                if (running.decision() != Decision.INCONCLUSIVE) {
+                    decided = running;
+                    selfPlay.stop();
+                }
+            }
+            if (progress != null) {
+                progress.accept(running);
+            }
+        }
+
+        synchronized Result result(boolean done) {
+            if (done && decided != null) {
+                return decided;
+            }
+            int pairs = 0;
+            double sum = 0;
+            double n = 0;
+            double priorSum = 0;
+            double squares = 0;
+            for (int k = 0; k < 5; k++) {
+                double x = k / 4.0;
+                double count = pentanomial[k] + PRIOR_PAIRS;
+                pairs += pentanomial[k];
+                sum += pentanomial[k] * x;
+                n += count;
+                priorSum += count * x;
+                squares += count * x * x;
+            }
+            double lower = Math.log(beta / (1 - alpha));
+            double upper = Math.log((1 - beta) / alpha);
+            if (pairs == 0) {
+                return new Result(Decision.INCONCLUSIVE, 0, 0, 0, 0, 0, 0, 0, lower, upper);
+            }
+            double mean = priorSum / n;
+            double variance = squares / n - mean * mean;
+            double s0 = expectedScore(elo0);
+            double s1 = expectedScore(elo1);
+            double llr = pairs * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+            double margin = 1.96 * Math.sqrt(variance / pairs);
+            double rawMean = sum / pairs;
+            double elo = elo(rawMean);
+            double error = (elo(rawMean + margin) - elo(rawMean - margin)) / 2;
+
+            Decision decision = Decision.INCONCLUSIVE;
+            if (llr >= upper)
+                decision = Decision.H1;
+            else if (llr <= lower)
+                decision = Decision.H0;
+            return new Result(decision, 2 * pairs, wins, draws, losses, elo, error, llr, lower, upper);
+        }
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double elo(double score) {
+        double s = Math.min(Math.max(score, 1e-3), 1 - 1e-3); // a clean sweep has no finite Elo
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    /**
+     * Build a suite of balanced openings: every sequence of {@code plies}
+     * moves that does not end the game, keeping one of each mirror-image
+     * pair, whose {@link HardAI} score at {@code depth} is within
+     * {@code maxScore} of even.
+     *
+     * @param rows     board rows
+     * @param cols     board columns
+     * @param connect  connect length
+     * @param plies    opening length
+     * @param depth    search depth used to judge each opening
+     * @param maxScore largest absolute search score kept
+     * @return opening move lists
+     */
+    public static int[][] balancedOpenings(int rows, int cols, int connect, int plies, int depth, int maxScore) {
+        List<int[]> suite = new ArrayList<>();
+        HardAI judge = new HardAI(depth, HardAI.DEFAULT_TABLE_MB, 0);
+        collect(new Board(rows, cols, connect), new int[plies], 0, judge, maxScore, suite);
+        return suite.toArray(new int[0][]);
+    }
+
+    private static void collect(Board board, int[] moves, int ply, HardAI judge, int maxScore,
+            List<int[]> suite) {
+        int cols = board.getCols();
+        char toMove = (ply % 2 == 0) ? 'X' : 'O';
+        char other = (ply % 2 == 0) ? 'O' : 'X';
+        if (ply == moves.length) {
+            if (!isCanonical(moves, cols))
+                return;
+            judge.chooseMove(board, toMove, other);
+            if (Math.abs(judge.getLastScore()) <= maxScore) {
+                suite.add(moves.clone());
+            }
+            return;
+        }
+        for (int col = 0; col < cols; col++) {
+            if (board.isColumnFull(col))
+                continue;
+            int row = board.drop(col, toMove);
+            if (!board.isWinningMove(row, col) && !board.isFull()) {
+                moves[ply] = col;
+                collect(board, moves, ply + 1, judge, maxScore, suite);
+            }
+            board.undo(row, col);
+        }
+    }
+
+    /**
+     * Returns whether a move list is not larger than its mirror image, so
+     * only one of the two is kept.
+     */
+    private static boolean isCanonical(int[] moves, int cols) {
+        for (int col : moves) {
+            int mirrored = cols - 1 - col;
+            if (col != mirrored)
+                return col < mirrored;
+        }
+        return true;
+    }
+
+    /**
+     * Read an opening suite: one opening per line, written as its column
+     * numbers from 1, for example {@code 4435}. Blank lines and lines
+     * starting with {@code #} are skipped.
+     *
+     * @param path file to read
+     * @param cols board columns, for validation
+     * @return opening move lists
+     * @throws IOException when the file cannot be read
+     * @throws IllegalArgumentException when a line is not a valid opening
+     */
+    public static int[][] loadOpenings(String path, int cols) throws IOException {
+        List<int[]> suite = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(path))) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            int[] moves = new int[line.length()];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = Character.digit(line.charAt(i), 10) - 1;
+                if (moves[i] < 0 || moves[i] >= cols) {
+                    throw new IllegalArgumentException("Invalid opening: " + line);
+                }
+            }
+            suite.add(moves);
+        }
+        if (suite.isEmpty()) {
+            throw new IllegalArgumentException("No openings in " + path);
+        }
+        return suite.toArray(new int[0][]);
+    }
+
+    /**
+     * Command-line runner:
+     * {@code java connectfour.Gauntlet <candidate> <baseline> [elo0 elo1] [alpha beta] [maxGames] [threads] [openingsFile] [rows cols connect] [--repeat-openings]}.
+     * An openings file of {@code -} screens the balanced openings of the
+     * board instead.
+     *
+     * @param args engines and optional test settings
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> positional = new ArrayList<>();
+        boolean repeat = false;
+        for (String arg : args) {
+            if (arg.equals("--repeat-openings"))
+                repeat = true;
+            else
+                positional.add(arg);
+        }
+        args = positional.toArray(new String[0]);
+        if (args.length < 2 || (args.length > 9 && args.length != 12)) {
+            System.out.println("Usage: java connectfour.Gauntlet <candidate> <baseline> [elo0 elo1] [alpha beta]"
+                    + " [maxGames] [threads] [openingsFile|-] [rows cols connect] [--repeat-openings]");
+            System.out.println("Engines: easy, med, hard[:depth[:ms]], mcts[:ms], perfect");
+            return;
+        }
+        int threads = (args.length >= 8) ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+        int rows = (args.length >= 12) ? Integer.parseInt(args[9]) : 6;
+        int cols = (args.length >= 12) ? Integer.parseInt(args[10]) : 7;
+        int connect = (args.length >= 12) ? Integer.parseInt(args[11]) : 4;
+        Gauntlet gauntlet = new Gauntlet(SelfPlay.engine(args[0]), SelfPlay.engine(args[1]), threads);
+        gauntlet.setRepeatOpenings(repeat);
+        if (args.length >= 4) {
+            gauntlet.setEloBounds(Double.parseDouble(args[2]), Double.parseDouble(args[3]));
+        }
+        if (args.length >= 6) {
+            gauntlet.setErrorRates(Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+        }
+        if (args.length >= 7) {
+            gauntlet.setMaxGames(Integer.parseInt(args[6]));
+        }
+        if (args.length >= 9 && !args[8].equals("-")) {
+            gauntlet.setOpenings(loadOpenings(args[8], cols));
+        } else {
+            long start = System.nanoTime();
+            gauntlet.setOpenings(balancedOpenings(rows, cols, connect, DEFAULT_OPENING_PLIES, DEFAULT_SCREEN_DEPTH,
+                    DEFAULT_MAX_OPENING_SCORE));
+            System.out.printf("%d balanced openings (%.1f s)%n", gauntlet.openings.length,
+                    (System.nanoTime() - start) / 1e9);
+        }
+
+        int[] reported = new int[1];
+        Result result;
+        try {
+            result = gauntlet.run(rows, cols, connect, running -> {
+                synchronized (reported) {
+                    if (running.games() >= reported[0] + 100) {
+                        reported[0] = running.games();
+                        System.out.println(running);
+                    }
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        System.out.println(args[0] + " vs " + args[1] + ":");
+        System.out.println(result);
+    }
+}
@@ -1,60 +1,616 @@
 package connectfour;
 
+/**
+ * Search-based AI using negamax with alpha-beta pruning.
+ * <p>
+ * Moves are played and taken back on the caller's board with
+ * {@link Board#drop(int, char)} and {@link Board#undo(int, int)} instead of
+ * copying the board at every node, and columns are tried center-first so
+ * that strong moves are searched early and cut off the rest. Results are
+ * cached in a {@link TranspositionTable} so a position reached through a
+ * different move order is not searched again. Positions at the depth limit
+ * are scored by an {@link Evaluator} that follows the search move by move.
+ * </p>
+ * <p>
+ * The search deepens one ply at a time. With a time budget it stops when
+ * the budget runs out and plays the best move of the last depth it
+ * completed; without one it stops at the configured depth.
+ * </p>
+ * <p>
+ * With more than one thread the search runs Lazy SMP: helper threads
+ * search the same position on their own board copies and share what they
+ * learn through the transposition table. With one thread the search is
+ * fully deterministic.
+ * </p>
+ * <p>
+ * When an {@link OpeningBook} is attached, positions found in it are
+ * answered from the book without searching.
+ * </p>
+ */
 public class HardAI implements AIPlayer {
 
-    private static final int DEPTH = 5;
+    public static final int DEFAULT_DEPTH = 5;
+    public static final int DEFAULT_TABLE_MB = 16;
+
+    private static final int WIN_SCORE = 1_000_000;
+    private static final int WIN_BOUND = WIN_SCORE - 100_000; // scores beyond this are forced wins
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int TIME_CHECK_MASK = 2047; // check the clock every 2048 nodes
+
+    private final int depth;
+    private final long moveTimeMillis;
+    private final int threads;
+    private final TranspositionTable table;
+    private OpeningBook book;
+    private boolean statsEnabled;
+    private SearchStats lastStats;
+    private long searchStart;
+    private volatile boolean stop;
+    private long deadline;
+    private long nodes;
+    private int lastDepth;
+    private int lastScore;
+    private boolean lastFromBook;
+
+    /**
+     * Create a HardAI searching {@link #DEFAULT_DEPTH} plies.
+     */
+    public HardAI() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * Create a HardAI searching the given number of plies, counting its own
+     * move as the first ply.
+     *
+     * @param depth search depth in plies (at least 1)
+     */
+    public HardAI(int depth) {
+        this(depth, DEFAULT_TABLE_MB);
+    }
+
+    /**
+     * Create a HardAI with a transposition table of the given size.
+     *
+     * @param depth            search depth in plies (at least 1)
+     * @param tableMegabytes   transposition table size in megabytes
+     */
+    public HardAI(int depth, int tableMegabytes) {
+        this(depth, tableMegabytes, 0);
+    }
+
+    /**
+     * Create a HardAI that deepens until either the depth limit or the time
+     * budget is reached, whichever comes first.
+     *
+     * @param depth          maximum search depth in plies (at least 1)
+     * @param tableMegabytes transposition table size in megabytes
+     * @param moveTimeMillis time budget per move in milliseconds, or 0 for
+     *                       no limit
+     */
+    public HardAI(int depth, int tableMegabytes, long moveTimeMillis) {
+        this(depth, tableMegabytes, moveTimeMillis, 1);
+    }
+
+    /**
+     * Create a HardAI that searches on several threads.
+     *
+     * @param depth          maximum search depth in plies (at least 1)
+     * @param tableMegabytes transposition table size in megabytes
+     * @param moveTimeMillis time budget per move in milliseconds, or 0 for
+     *                       no limit
+     * @param threads        number of search threads; 1 searches on the
+     *                       calling thread only
+     */
+    public HardAI(int depth, int tableMegabytes, long moveTimeMillis, int threads) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Search depth must be at least 1.");
+        }
+        if (moveTimeMillis < 0) {
+            throw new IllegalArgumentException("Move time cannot be negative.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        this.depth = depth;
+        this.moveTimeMillis = moveTimeMillis;
+        this.threads = threads;
+        this.table = new TranspositionTable(tableMegabytes);
+    }
+
+    /**
+     * Answer positions found in the given book without searching, or stop
+     * using a book when null. A book built for a different board shape is
+     * ignored.
+     *
+     * @param book opening book to consult
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
 
     @Override
     public int chooseMove(Board board, char aiToken, char opponentToken) {
-        int bestScore = Integer.MIN_VALUE;
-        int bestMove = 0;
-
-        for (int c = 0; c < board.getCols(); c++) {
-            if (!board.isColumnFull(c)) {
-                Board temp = new Board(board);
-                int r = temp.drop(c, aiToken);
-                int score = minimax(temp, DEPTH - 1, false, aiToken, opponentToken);
-                if (score > bestScore) {
-                    bestScore = score;
-                    bestMove = c;
-                }
+        if (book != null && board.getMoveCount() <= book.getPly() && book.matches(board)) {
+            int index = book.find(board.getKey() ^ Board.sideKey(aiToken));
+            if (index >= 0 && !board.isColumnFull(book.moveAt(index))) {
+                lastFromBook = true;
+                nodes = 0;
+                lastStats = null;
+                lastDepth = book.depthAt(index);
+                lastScore = book.scoreAt(index);
+                return book.moveAt(index);
+            }
+        }
+
+        lastFromBook = false;
+        stop = false;
+        deadline = (moveTimeMillis > 0) ? System.nanoTime() + moveTimeMillis * 1_000_000L : Long.MAX_VALUE;
+        table.newSearch();
+        searchStart = System.nanoTime();
+
+        // a copy: the game's board may track threats for hints, which the search never reads
+        Searcher main = new Searcher(new Board(board), aiToken, opponentToken, 0);
+        Searcher[] helpers = new Searcher[threads - 1];
+        Thread[] workers = new Thread[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Searcher(new Board(board), aiToken, opponentToken, i + 1);
+            workers[i] = new Thread(helpers[i]::search, "HardAI-helper-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        main.search();
+        stop = true;
+
+        Searcher best = main;
+        nodes = main.nodes;
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            nodes += helpers[i].nodes;
+            if (helpers[i].completedDepth > best.completedDepth) {
+                best = helpers[i];
+            }
+        }
+
+        lastDepth = best.completedDepth;
+        lastScore = best.bestScore;
+        if (statsEnabled) {
+            lastStats = main.stats;
+            lastStats.elapsedNanos = System.nanoTime() - searchStart;
+            for (Searcher helper : helpers) {
+                lastStats.add(helper.stats);
             }
+            lastStats.completedDepth = best.completedDepth;
+            lastStats.bestMoveNanos = best.stats.bestMoveNanos;
+        } else {
+            lastStats = null;
         }
-        return bestMove;
+        return best.bestMove;
+    }
+
+    /**
+     * Returns the number of positions visited by the last
+     * {@link #chooseMove(Board, char, char)} call, summed over all threads.
+     *
+     * @return node count
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Returns the depth of the last iteration that
+     * {@link #chooseMove(Board, char, char)} completed, i.e. how deep the
+     * returned move was searched.
+     *
+     * @return completed depth in plies
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Returns the score of the move returned by the last
+     * {@link #chooseMove(Board, char, char)} call, from the AI's point of
+     * view. Positive scores favour the AI.
+     *
+     * @return search score
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Returns whether the last move was taken from the opening book.
+     *
+     * @return true when no search was run for the last move
+     */
+    public boolean wasLastMoveFromBook() {
+        return lastFromBook;
+    }
+
+    /**
+     * Returns the configured search depth.
+     *
+     * @return depth in plies
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of search threads.
+     *
+     * @return thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Ask a {@link #chooseMove(Board, char, char)} call running on another
+     * thread to return early with the best move of its last completed depth.
+     * A request made before the call begins is ignored, so callers that need
+     * the search stopped should repeat it until the call has returned.
+     */
+    public void stop() {
+        stop = true;
+    }
+
+    /**
+     * Switch collection of {@link SearchStats} on or off. Off by default;
+     * while off, searches create no statistics and pay nothing for them.
+     *
+     * @param enabled whether later searches collect statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Returns whether searches collect {@link SearchStats}.
+     *
+     * @return true when statistics are collected
+     */
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    /**
+     * Returns the statistics of the last
+     * {@link #chooseMove(Board, char, char)} call, summed over all threads.
+     *
+     * @return statistics, or null when collection was off or the move came
+     *         from the opening book
+     */
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    /**
+     * Forget every position cached by earlier searches, so the next search
+     * starts cold, as at the start of a new game.
+     */
+    public void clearTable() {
+        table.clear();
+    }
+
+    /**
+     * Returns the move the transposition table expects {@code toMove} to
+     * play in the given position, usually the reply the last search
+     * predicted.
+     *
+     * @param board  position to look up
+     * @param toMove token of the player to move
+     * @return expected column, or -1 when the table has no playable move
+     */
+    int expectedReply(Board board, char toMove) {
+        long entry = table.probe(board.getKey() ^ Board.sideKey(toMove));
+        int move = (entry == 0) ? -1 : TranspositionTable.move(entry);
+        return (move >= 0 && move < board.getCols() && !board.isColumnFull(move)) ? move : -1;
     }
 
-    private int minimax(Board board, int depth, boolean max,
-            char ai, char opp) {
+    /**
+     * Explanation of the search:
+     *
+     * - Negamax scores every position from the point of view of the player
+     * to move, so the opponent's best score is simply negated on the way
+     * back up and a single routine handles both sides.
+     *
+     * - A move that completes a line scores WIN_SCORE minus the ply it was
+     * played at, so faster wins and slower losses are preferred. A full
+     * board scores 0 and a position at the depth limit gets the
+     * Evaluator's heuristic score, which stays far below any win score.
+     *
+     * - Alpha is the best score the side to move is already guaranteed and
+     * beta the best the opponent will allow. Once a move reaches beta the
+     * opponent would never enter this position, so the remaining columns
+     * are skipped. Center-first ordering finds those moves early.
+     *
+     * - Every searched node is stored in the transposition table under its
+     * Zobrist key and side to move, together with whether the score is
+     * exact or only a bound. A later visit searched no deeper reuses the
+     * score, and otherwise still tries the stored best move first. Win
+     * scores are stored relative to the node rather than the root, so they
+     * stay correct when the position is reached at a different ply.
+     *
+     * - Iterative deepening searches depth 1, 2, 3, ... in turn. Each
+     * iteration leaves best moves in the table and reorders the root moves,
+     * so the next iteration searches the likely best line first and most of
+     * the shallower work is paid back in cutoffs. When the clock runs out the
+     * current iteration is abandoned and nothing from it is stored. The
+     * first iteration always completes so there is always a move to play.
+     *
+     * - Lazy SMP: every helper runs the same iterative deepening on its own
+     * board copy. Odd helpers start one ply deeper and each helper rotates
+     * its root move order, so the threads drift apart and fill the shared
+     * table with different subtrees that the others then cut off from. The
+     * table is the only shared state and needs no locks (see
+     * {@link TranspositionTable}). When the main thread finishes, helpers
+     * are told to stop, and the result of whichever thread completed the
+     * deepest iteration is played.
+     */
 
-        if (depth == 0 || board.isFull())
-            return 0;
+    /**
+     * The per-thread state of one search: its board, root move list, node
+     * counter and best result so far.
+     */
+    private class Searcher {
+        private final Board board;
+        private final char aiToken;
+        private final char opponentToken;
+        private final int id;
+        private final int[] order;
+        private final Evaluator eval;
+        private final SearchStats stats; // null unless statistics are enabled
+        private long nodes;
+        private boolean aborted;
+        private int completedDepth;
+        private int bestMove;
+        private int bestScore;
 
-        if (max) {
-            int best = Integer.MIN_VALUE;
-            for (int c = 0; c < board.getCols(); c++) {
-                if (!board.isColumnFull(c)) {
-                    Board temp = new Board(board);
-                    int r = temp.drop(c, ai);
-                    if (temp.isWinningMove(r, c))
-                        return 1000;
-                    best = Math.max(best,
-                            minimax(temp, depth - 1, false, ai, opp));
+        Searcher(Board board, char aiToken, char opponentToken, int id) {
+            this.board = board;
+            this.aiToken = aiToken;
+            this.opponentToken = opponentToken;
+            this.id = id;
+            this.order = centerFirstOrder(board.getCols());
+            this.eval = new Evaluator(board, aiToken, opponentToken);
+            this.stats = statsEnabled ? new SearchStats(depth) : null;
+        }
+
+        /**
+         * Run iterative deepening until the depth limit, the deadline or a
+         * stop request.
+         */
+        void search() {
+            int[] moves = new int[order.length];
+            int[] scores = new int[order.length];
+            int count = 0;
+            for (int c : order) {
+                if (!board.isColumnFull(c))
+                    moves[count++] = c;
+            }
+            if (count == 0)
+                return;
+            for (int i = 0; i < id % count; i++) {
+                int first = moves[0];
+                System.arraycopy(moves, 1, moves, 0, count - 1);
+                moves[count - 1] = first;
+            }
+
+            int emptyCells = board.getRows() * board.getCols() - board.getMoveCount();
+            int maxDepth = Math.min(depth, emptyCells);
+            bestMove = moves[0];
+
+            for (int d = 1 + (id % 2); d <= maxDepth; d++) {
+                long before = nodes;
+                int score = searchRoot(d, moves, scores, count);
+                if (aborted)
+                    break;
+                if (stats != null) {
+                    stats.iterationNodes[d] = nodes - before;
+                    if (completedDepth == 0 || moves[0] != bestMove)
+                        stats.bestMoveNanos = System.nanoTime() - searchStart;
                 }
+                bestMove = moves[0];
+                bestScore = score;
+                completedDepth = d;
+                if (Math.abs(score) > WIN_BOUND)
+                    break; // a forced result does not change with more depth
             }
-            return best;
-        } else {
-            int best = Integer.MAX_VALUE;
-            for (int c = 0; c < board.getCols(); c++) {
-                if (!board.isColumnFull(c)) {
-                    Board temp = new Board(board);
-                    int r = temp.drop(c, opp);
-                    if (temp.isWinningMove(r, c))
-                        return -1000;
-                    best = Math.min(best,
-                            minimax(temp, depth - 1, true, ai, opp));
+            if (stats != null) {
+                stats.nodes = nodes;
+                stats.completedDepth = completedDepth;
+            }
+        }
+
+        /**
+         * Search every root move to the given depth, then reorder the moves so
+         * the best one from this iteration is tried first in the next.
+         *
+         * @return the best root score, meaningless when the search was aborted
+         */
+        private int searchRoot(int depth, int[] moves, int[] scores, int count) {
+            int alpha = -INFINITY;
+            if (stats != null)
+                stats.expand(0);
+            for (int i = 0; i < count; i++) {
+                int c = moves[i];
+                int r = board.drop(c, aiToken);
+                nodes++;
+                int score;
+                if (board.isWinningMove(r, c)) {
+                    score = WIN_SCORE - 1;
+                } else {
+                    eval.add(r, c, aiToken);
+                    score = -negamax(depth - 1, -INFINITY, -alpha, opponentToken, aiToken, 1);
+                    eval.remove(r, c, aiToken);
+                }
+                board.undo(r, c);
+                if (aborted)
+                    return alpha;
+
+                scores[i] = score;
+                alpha = Math.max(alpha, score);
+            }
+
+            // stable insertion sort, best score first
+            for (int i = 1; i < count; i++) {
+                int m = moves[i];
+                int s = scores[i];
+                int j = i - 1;
+                while (j >= 0 && scores[j] < s) {
+                    moves[j + 1] = moves[j];
+                    scores[j + 1] = scores[j];
+                    j--;
+                }
+                moves[j + 1] = m;
+                scores[j + 1] = s;
+            }
+            table.store(board.getKey() ^ Board.sideKey(aiToken), alpha, depth, TranspositionTable.EXACT, moves[0]);
+            return alpha;
+        }
+
+        /**
+         * Score the board for {@code toMove} by searching {@code depth} more plies.
+         *
+         * @param depth  remaining plies
+         * @param alpha  lower bound for the side to move
+         * @param beta   upper bound for the side to move
+         * @param toMove token of the player to move
+         * @param other  token of the opponent
+         * @param ply    distance from the root
+         * @return score from the perspective of {@code toMove}
+         */
+        private int negamax(int depth, int alpha, int beta, char toMove, char other, int ply) {
+
+            if (board.isFull())
+                return 0;
+            if (depth == 0)
+                return eval.score(toMove);
+            if ((nodes & TIME_CHECK_MASK) == 0 && (stop || System.nanoTime() >= deadline)) {
+                aborted = true;
+                return 0;
+            }
+
+            int alphaOrig = alpha;
+            long key = board.getKey() ^ Board.sideKey(toMove);
+            long entry = table.probe(key);
+            if (stats != null)
+                stats.probe(entry != 0);
+            int ttMove = -1;
+            if (entry != 0) {
+                ttMove = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) >= depth) {
+                    int score = fromTable(TranspositionTable.score(entry), ply);
+                    int flag = TranspositionTable.flag(entry);
+                    if (flag == TranspositionTable.LOWER)
+                        alpha = Math.max(alpha, score);
+                    else if (flag == TranspositionTable.UPPER)
+                        beta = Math.min(beta, score);
+                    if (flag == TranspositionTable.EXACT || alpha >= beta) {
+                        if (stats != null)
+                            stats.tableCutoffs++;
+                        return score;
+                    }
                 }
             }
+
+            if (stats != null)
+                stats.expand(ply);
+            int best = -INFINITY;
+            int bestMove = -1;
+            int tried = 0;
+            for (int i = -1; i < order.length; i++) {
+                int c = (i < 0) ? ttMove : order[i];
+                if (c < 0 || (i >= 0 && c == ttMove) || board.isColumnFull(c))
+                    continue;
+                int r = board.drop(c, toMove);
+                nodes++;
+                tried++;
+                if (board.isWinningMove(r, c)) {
+                    board.undo(r, c);
+                    if (stats != null)
+                        stats.cutoff(ply, tried == 1);
+                    return WIN_SCORE - ply - 1;
+                }
+                int score;
+                if (depth == 1) {
+                    score = board.isFull() ? 0 : eval.scoreWith(r, c, toMove);
+                } else {
+                    eval.add(r, c, toMove);
+                    score = -negamax(depth - 1, -beta, -alpha, other, toMove, ply + 1);
+                    eval.remove(r, c, toMove);
+                }
+                board.undo(r, c);
+                if (aborted)
+                    return 0;
+
+                if (score > best) {
+                    best = score;
+                    bestMove = c;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            if (stats != null)
+                                stats.cutoff(ply, tried == 1);
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int flag = (best <= alphaOrig) ? TranspositionTable.UPPER
+                    : (best >= beta) ? TranspositionTable.LOWER
+                            : TranspositionTable.EXACT;
+            table.store(key, toTable(best, ply), depth, flag, bestMove);
             return best;
         }
     }
+
+    /**
+     * Convert a win score measured from the root into one measured from the
+     * node being stored.
+     */
+    private static int toTable(int score, int ply) {
+        if (score > WIN_BOUND)
+            return score + ply;
+        if (score < -WIN_BOUND)
+            return score - ply;
+        return score;
+    }
+
+    /**
+     * Convert a stored win score back to one measured from the root.
+     */
+    private static int fromTable(int score, int ply) {
+        if (score > WIN_BOUND)
+            return score - ply;
+        if (score < -WIN_BOUND)
+            return score + ply;
+        return score;
+    }
+
+    /**
+     * Build a column order that starts in the middle and alternates outwards,
+     * e.g. 3, 4, 2, 5, 1, 6, 0 for seven columns.
+     *
+     * @param cols number of columns
+     * @return column indices in search order
+     */
+    static int[] centerFirstOrder(int cols) {
+        int[] result = new int[cols];
+        int center = (cols - 1) / 2;
+        for (int i = 0; i < cols; i++) {
+            int offset = (i + 1) / 2;
+            result[i] = (i % 2 == 1) ? center + offset : center - offset;
+        }
+        return result;
+    }
 }
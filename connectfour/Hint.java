@@ -37,10 +37,9 @@ public class Hint {
          * - The method temporarily modifies the provided Board by calling
          * drop(...) and must undo every simulated drop with undo(...)
          * to restore the original board state for the next simulation.
-         * - When simulating the opponent's replies we iterate over all
-         * columns and simulate a drop for the opponent. If any single
-         * reply results in a win for the opponent we mark the original
-         * column as unsafe and stop further checks for that column.
+         * - The opponent's replies are not simulated one by one: the board
+         * keeps every token's open threats up to date on each drop, so
+         * findWinningColumn(opponent) answers whether any reply wins.
          * - This is a shallow two-ply simulation: it detects immediate
          * opponent wins but does not perform deeper minimax search. That
          * keeps complexity manageable while avoiding obvious blunders.
@@ -52,20 +51,7 @@ public class Hint {
             }
 
             int row = board.drop(col, currentPlayer);
-            boolean opponentCanWin = false;
-
-            for (int oppCol = 0; oppCol < board.getCols(); oppCol++) {
-                if (board.isColumnFull(oppCol))
-                    continue;
-
-                int oppRow = board.drop(oppCol, opponent);
-                if (board.isWinningMove(oppRow, oppCol)) {
-                    opponentCanWin = true;
-                }
-                board.undo(oppRow, oppCol);
-                if (opponentCanWin)
-                    break;
-            }
+            boolean opponentCanWin = board.findWinningColumn(opponent) != -1;
 
             if (opponentCanWin) {
                 unsafeCols.add(col);
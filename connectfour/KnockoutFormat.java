@@ -0,0 +1,158 @@
+package connectfour;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single-elimination tournament: the loser of every match is out, and the
+ * last player standing wins.
+ * <p>
+ * The bracket is the field size rounded up to a power of two, seeded so
+ * that the top two seeds can only meet in the final, the top four only in
+ * the semifinals, and so on. The empty places go to the top seeds as
+ * first-round byes, which advance them without a match and without a win
+ * in the standings. A round is paired once every result of the round
+ * before is in, and {@code players - 1} matches decide the event.
+ * </p>
+ */
+public class KnockoutFormat implements TournamentFormat {
+    private final int rounds;
+    private final int matches;
+    private String[] bracket; // players still in, in bracket order; null is an empty place
+    private String[] next; // winners of the current round, by place in the next one
+    private final Map<String, Integer> place = new HashMap<>(); // player -> place in next, while playing
+    private final ArrayDeque<Match> pending = new ArrayDeque<>();
+    private int round; // rounds paired so far
+    private int outstanding; // results of the current round not reported yet
+    private int handedOut;
+
+    /**
+     * Create a knockout bracket.
+     *
+     * @param players players in seeding order, strongest first
+     */
+    public KnockoutFormat(List<String> players) {
+        int n = players.size();
+        Set<String> seen = new HashSet<>();
+        for (String player : players) {
+            if (!seen.add(player)) {
+                throw new IllegalArgumentException("Duplicate player: " + player);
+            }
+        }
+        int size = 1;
+        while (size < n) {
+            size *= 2;
+        }
+        this.rounds = Integer.numberOfTrailingZeros(size);
+        this.matches = Math.max(0, n - 1);
+        this.bracket = new String[size];
+        int[] seeds = seedOrder(size);
+        for (int i = 0; i < size; i++) {
+            bracket[i] = (seeds[i] < n) ? players.get(seeds[i]) : null;
+        }
+    }
+
+    @Override
+    public Match nextMatch() {
+        while (pending.isEmpty() && outstanding == 0 && round < rounds) {
+            pairRound();
+        }
+        Match m = pending.poll();
+        if (m != null) {
+            handedOut++;
+        }
+        return m;
+    }
+
+    @Override
+    public void recordResult(String winner, String loser) {
+        Integer at = place.remove(winner);
+        if (at == null || place.remove(loser) == null) {
+            throw new IllegalArgumentException("No match in progress between " + winner + " and " + loser);
+        }
+        next[at] = winner;
+        if (--outstanding == 0 && pending.isEmpty()) {
+            bracket = next;
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return handedOut == matches;
+    }
+
+    @Override
+    public long remainingMatches() {
+        return matches - handedOut;
+    }
+
+    @Override
+    public String describe() {
+        String champion = getChampion();
+        return "knockout, " + rounds + " rounds" + ((champion == null) ? "" : ", won by " + champion);
+    }
+
+    /**
+     * @return the winner of the final, or null while the event is still on
+     */
+    public String getChampion() {
+        return (round == rounds && outstanding == 0 && bracket.length == 1) ? bracket[0] : null;
+    }
+
+    /**
+     * Pair neighbouring places of the bracket. A player facing an empty
+     * place moves straight on to the next round.
+     */
+    private void pairRound() {
+        next = new String[bracket.length / 2];
+        for (int k = 0; k < next.length; k++) {
+            String a = bracket[2 * k];
+            String b = bracket[2 * k + 1];
+            if (a == null || b == null) {
+                next[k] = (a == null) ? b : a;
+            } else {
+                place.put(a, k);
+                place.put(b, k);
+                pending.add(new Match(a, b));
+            }
+        }
+        outstanding = pending.size();
+        round++;
+        if (outstanding == 0) {
+            bracket = next;
+        }
+    }
+
+    /**
+     * Explanation of the seeding:
+     *
+     * - A bracket of 2 places is seeds 0 and 1.
+     *
+     * - Doubling a bracket of m places puts each seed s next to seed
+     * 2m - 1 - s, its mirror in the bigger field. So in every first-round
+     * match the seeds add up to size - 1, and the strongest seeds meet the
+     * weakest, or an empty place when seeds run out.
+     *
+     * - Each half of the doubled bracket is a doubled half of the old one,
+     * so the top seeds stay in separate halves all the way up.
+     *
+     * Example for 8 places: 0 7 3 4 1 6 2 5.
+     */
+    private static int[] seedOrder(int size) {
+        int[] order = { 0 };
+        while (order.length < size) {
+            int m = order.length;
+            int[] doubled = new int[2 * m];
+            for (int i = 0; i < m; i++) {
+                doubled[2 * i] = order[i];
+                doubled[2 * i + 1] = 2 * m - 1 - order[i];
+            }
+            order = doubled;
+        }
+        return order;
+    }
+}
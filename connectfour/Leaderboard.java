@@ -0,0 +1,228 @@
+package connectfour;
+
+import java.util.*;
+
+/**
+ * Players ranked by one of several orderings, kept sorted as results come
+ * in.
+ * <p>
+ * Each ordering is an {@link AVLTree} of (score, name) entries, built from
+ * the player store the first time it is asked for. From then on a
+ * finished game moves the player's entries in O(log n), the top N are
+ * read in O(log n + N) and a player's rank is found in O(log n), since the
+ * tree counts the nodes below each node. Orderings never asked for cost
+ * nothing.
+ * </p>
+ * <p>
+ * Ratings also change on tournament threads, so all methods lock the
+ * leaderboard. It never calls out while locked except to read the store
+ * when building an ordering.
+ * </p>
+ */
+public class Leaderboard {
+
+    /**
+     * The ways players can be ranked. Ties are broken by name.
+     */
+    public enum Order {
+        /** Glicko-2 rating. */
+        RATING("rating"),
+        /** Games won. */
+        WINS("wins"),
+        /** Share of games won; players without games count as 0. */
+        WIN_RATE("winrate"),
+        /** Games won against an AI. */
+        AI_WINS("aiwins"),
+        /** Games drawn. */
+        DRAWS("draws");
+
+        private final String key;
+
+        Order(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the word naming the ordering in commands
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @param key word naming an ordering
+         * @return the ordering, or null for an unknown word
+         */
+        public static Order parse(String key) {
+            for (Order order : values()) {
+                if (order.key.equalsIgnoreCase(key))
+                    return order;
+            }
+            return null;
+        }
+
+        /**
+         * @return the value players are ranked by, higher first
+         */
+        public double score(PlayerProfile p) {
+            switch (this) {
+                case RATING:
+                    return p.getRating().getRating();
+                case WINS:
+                    return p.getWinCount();
+                case WIN_RATE:
+                    return (p.getGameCount() == 0) ? 0 : (double) p.getWinCount() / p.getGameCount();
+                case AI_WINS:
+                    return p.getAIWinCount();
+                default:
+                    return p.getDrawCount();
+            }
+        }
+
+        /**
+         * @return the player's standing in this ordering, for printing
+         */
+        public String describe(PlayerProfile p) {
+            switch (this) {
+                case RATING:
+                    return p.getRating() + " (" + p.getWinCount() + " wins)";
+                case WINS:
+                    return p.getWinCount() + " wins";
+                case WIN_RATE:
+                    return String.format("%.1f%% of %d games", 100 * score(p), p.getGameCount());
+                case AI_WINS:
+                    return p.getAIWinCount() + " AI wins";
+                default:
+                    return p.getDrawCount() + " draws";
+            }
+        }
+
+        /**
+         * @return the ordering as a comparator, best player first
+         */
+        public Comparator<PlayerProfile> comparator() {
+            return Comparator.comparingDouble(this::score).reversed().thenComparing(PlayerProfile::getName);
+        }
+    }
+
+    /**
+     * A player's place in one ordering. Entries are replaced, never
+     * changed, so the tree stays sorted.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final double score;
+        final String name;
+
+        Entry(double score, String name) {
+            this.score = score;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = Double.compare(other.score, score);
+            return (cmp != 0) ? cmp : name.compareTo(other.name);
+        }
+    }
+
+    private static final class Index {
+        final AVLTree<Entry> tree = new AVLTree<>();
+        final Map<String, Entry> current = new HashMap<>(); // each player's entry in the tree
+    }
+
+    private final PlayerStore store;
+    private final Map<Order, Index> indexes = new EnumMap<>(Order.class);
+
+    /**
+     * Create a leaderboard over the players of a store. Nothing is read
+     * until an ordering is first used.
+     *
+     * @param store where the players are kept
+     */
+    public Leaderboard(PlayerStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the best players in an ordering.
+     *
+     * @param order ordering
+     * @param n     number of players
+     * @return names of up to {@code n} players, best first
+     */
+    public synchronized List<String> top(Order order, int n) {
+        List<String> names = new ArrayList<>();
+        for (Entry e : index(order).tree.range(0, Math.max(0, n))) {
+            names.add(e.name);
+        }
+        return names;
+    }
+
+    /**
+     * Returns a player's place in an ordering.
+     *
+     * @param order ordering
+     * @param name  player name
+     * @return 1 for the best player, or 0 when there is no such player
+     */
+    public synchronized int rank(Order order, String name) {
+        Index index = index(order);
+        Entry e = index.current.get(name);
+        return (e == null) ? 0 : index.tree.rank(e) + 1;
+    }
+
+    /**
+     * Move a player whose results changed, or add a new one, in every
+     * ordering built so far.
+     *
+     * @param p the player's profile
+     */
+    public synchronized void update(PlayerProfile p) {
+        for (Map.Entry<Order, Index> e : indexes.entrySet()) {
+            move(e.getValue(), p.getName(), e.getKey().score(p));
+        }
+    }
+
+    /**
+     * Move a player whose rating changed. Ratings without a registered
+     * owner, such as those of AI levels, are ignored.
+     *
+     * @param r the changed rating
+     */
+    public synchronized void ratingChanged(Rating r) {
+        Index index = indexes.get(Order.RATING);
+        if (index != null && r.player != null && index.current.containsKey(r.player)) {
+            move(index, r.player, r.getRating());
+        }
+    }
+
+    /**
+     * Forget every ordering, after the players were loaded again.
+     */
+    public synchronized void clear() {
+        indexes.clear();
+    }
+
+    private static void move(Index index, String name, double score) {
+        Entry old = index.current.get(name);
+        if (old != null) {
+            if (old.score == score)
+                return;
+            index.tree.remove(old);
+        }
+        Entry e = new Entry(score, name);
+        index.tree.insert(e);
+        index.current.put(name, e);
+    }
+
+    private Index index(Order order) {
+        Index index = indexes.get(order);
+        if (index == null) {
+            Index built = new Index();
+            store.forEach(p -> move(built, p.getName(), order.score(p)));
+            indexes.put(order, built);
+            index = built;
+        }
+        return index;
+    }
+}
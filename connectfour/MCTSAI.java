@@ -0,0 +1,457 @@
+package connectfour;
+
+/**
+ * Monte Carlo Tree Search AI (UCT) for boards of any size.
+ * <p>
+ * Instead of searching to a fixed depth, the AI repeatedly walks down a
+ * tree of explored positions, adds one new position, finishes the game with
+ * random moves and records the result along the walked path. Moves that
+ * win more playouts get explored more, and the move played is the one
+ * explored most. Strength grows with the number of playouts rather than
+ * with a depth that becomes unaffordable on large boards.
+ * </p>
+ * <p>
+ * Search runs root-parallel: every thread grows its own tree on its own
+ * board copy, without locks, and the root visit counts are summed at the
+ * end. Each thread keeps its tree between moves and continues from the
+ * subtree of the position actually reached. Playouts drop and undo tokens
+ * on the thread's {@link Board} and allocate nothing.
+ * </p>
+ */
+public class MCTSAI implements AIPlayer {
+
+    public static final long DEFAULT_MOVE_MILLIS = 1000;
+
+    private static final double EXPLORATION = 1.4; // UCT exploration constant, about sqrt(2)
+    private static final int MAX_TREE_NODES = 1 << 19; // over all threads; later playouts stop growing the tree
+    private static final int TIME_CHECK_MASK = 15; // check the clock every 16 playouts
+
+    private static final byte NONE = 0; // node states
+    private static final byte WIN = 1; // the player who moved into the node has won
+    private static final byte DRAW = 2;
+
+    private final long playouts;
+    private final long moveTimeMillis;
+    private final int threads;
+    private final Tree[] trees;
+    private volatile boolean stop;
+    private long deadline;
+    private long lastPlayouts;
+    private long lastReused;
+    private double lastWinRate;
+
+    /**
+     * Create an MCTS AI that thinks for {@link #DEFAULT_MOVE_MILLIS} per
+     * move on every available core.
+     */
+    public MCTSAI() {
+        this(0, DEFAULT_MOVE_MILLIS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an MCTS AI that stops at a playout count, a time budget or
+     * whichever comes first.
+     *
+     * @param playouts       playouts per move over all threads, or 0 for no
+     *                       limit
+     * @param moveTimeMillis time budget per move in milliseconds, or 0 for
+     *                       no limit
+     * @param threads        number of search threads; 1 searches on the
+     *                       calling thread only
+     */
+    public MCTSAI(long playouts, long moveTimeMillis, int threads) {
+        if (playouts < 0 || moveTimeMillis < 0) {
+            throw new IllegalArgumentException("Playouts and move time cannot be negative.");
+        }
+        if (playouts == 0 && moveTimeMillis == 0) {
+            throw new IllegalArgumentException("Either a playout count or a move time is required.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        this.playouts = playouts;
+        this.moveTimeMillis = moveTimeMillis;
+        this.threads = threads;
+        this.trees = new Tree[threads];
+    }
+
+    @Override
+    public int chooseMove(Board board, char aiToken, char opponentToken) {
+        int win = board.findWinningColumn(aiToken);
+        if (win >= 0) {
+            lastPlayouts = 0;
+            lastReused = 0;
+            lastWinRate = 1.0;
+            return win;
+        }
+
+        stop = false;
+        deadline = (moveTimeMillis > 0) ? System.nanoTime() + moveTimeMillis * 1_000_000L : Long.MAX_VALUE;
+        lastReused = 0;
+        for (int i = 0; i < threads; i++) {
+            if (trees[i] == null) {
+                trees[i] = new Tree(i);
+            }
+            lastReused += trees[i].moveTo(board, aiToken, opponentToken);
+            trees[i].quota = (playouts == 0) ? Long.MAX_VALUE : playouts / threads + ((i < playouts % threads) ? 1 : 0);
+        }
+
+        Thread[] workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(trees[i + 1]::search, "MCTS-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        trees[0].search();
+        if (playouts == 0) {
+            stop = true; // time-limited helpers would otherwise run to the deadline
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop = true;
+            }
+        }
+
+        long[] visits = new long[board.getCols()];
+        double[] scores = new double[board.getCols()];
+        lastPlayouts = 0;
+        for (Tree tree : trees) {
+            lastPlayouts += tree.played;
+            Node[] children = tree.root.children;
+            if (children == null)
+                continue;
+            for (int c = 0; c < children.length; c++) {
+                if (children[c] != null) {
+                    visits[c] += children[c].visits;
+                    scores[c] += children[c].score;
+                }
+            }
+        }
+
+        int best = -1;
+        for (int c : HardAI.centerFirstOrder(board.getCols())) {
+            if (board.isColumnFull(c))
+                continue;
+            if (best == -1 || visits[c] > visits[best]) {
+                best = c;
+            }
+        }
+        lastWinRate = (visits[best] > 0) ? scores[best] / visits[best] : 0.5;
+        return best;
+    }
+
+    /**
+     * Returns the number of playouts run for the last move over all
+     * threads, not counting those reused from earlier moves.
+     *
+     * @return playout count
+     */
+    public long getPlayoutCount() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Returns the number of playouts the last move started with from the
+     * subtrees kept since the previous move.
+     *
+     * @return reused playout count
+     */
+    public long getReusedPlayouts() {
+        return lastReused;
+    }
+
+    /**
+     * Returns the share of playouts through the last move played that the
+     * AI won, counting draws as half.
+     *
+     * @return estimated win rate between 0 and 1
+     */
+    public double getLastWinRate() {
+        return lastWinRate;
+    }
+
+    /**
+     * Returns the number of search threads.
+     *
+     * @return thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Explanation of the search:
+     *
+     * - Every node is a position and stores how many playouts passed
+     * through it and how many of those the player who moved into it won
+     * (draws count as half). A playout starts at the root and repeatedly
+     * picks the child with the highest UCT value, wins / visits +
+     * EXPLORATION * sqrt(ln(parent visits) / visits): a well-scoring child
+     * is picked often, and a rarely tried one eventually gets picked too.
+     *
+     * - At the first node with an unexplored move, that move is added as a
+     * new child (center columns first), and the game is finished with
+     * uniformly random moves. The result is then added to every node on
+     * the path, flipping it at each level because the players alternate.
+     * Positions where the game is over are marked terminal and score their
+     * known result without a random finish.
+     *
+     * - Root parallelism: each thread grows an independent tree, so there
+     * is no shared mutable state besides the stop flag. The differing
+     * random playouts make the trees explore differently, and summing the
+     * root visit counts combines them.
+     *
+     * - Tree reuse: each node remembers the board key after its move. At
+     * the next call, the position reached is looked up among the
+     * descendants of the old root, as many plies down as tokens have been
+     * added since, and becomes the new root with its statistics intact.
+     */
+
+    /**
+     * One position in a search tree.
+     */
+    private static final class Node {
+        final int move; // column played to reach this node, -1 for a fresh root
+        final long key; // board key after the move
+        Node[] children; // by column, created on first expansion
+        int nextOrder; // index into the center-first order of the next move to expand
+        int visits;
+        double score; // playout results for the player who made the move
+        byte terminal; // NONE, WIN (for the player who made the move) or DRAW
+
+        Node(int move, long key) {
+            this.move = move;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The per-thread state of one search: its tree, board and random
+     * number generator.
+     */
+    private class Tree {
+        private Board board;
+        private char aiToken;
+        private char opponentToken;
+        private Node root;
+        private int rootMoveCount;
+        private int[] order;
+        private int[] pathRows;
+        private int[] pathCols;
+        private Node[] pathNodes;
+        private long rng;
+        private int nodeCount;
+        long quota;
+        long played;
+
+        Tree(int id) {
+            this.rng = System.nanoTime() ^ (0x9E3779B97F4A7C15L * (id + 1));
+        }
+
+        /**
+         * Point the tree at a new position, keeping the matching subtree of
+         * the previous search when there is one.
+         *
+         * @return number of playouts kept from the previous search
+         */
+        long moveTo(Board position, char ai, char opponent) {
+            Node found = null;
+            if (root != null && ai == aiToken && opponent == opponentToken && sameShape(position)) {
+                found = find(root, position.getKey(), position.getMoveCount() - rootMoveCount);
+            }
+            boolean reshaped = board == null || !sameShape(position);
+            board = new Board(position);
+            aiToken = ai;
+            opponentToken = opponent;
+            rootMoveCount = position.getMoveCount();
+            played = 0;
+            if (reshaped) {
+                int cells = position.getRows() * position.getCols();
+                order = HardAI.centerFirstOrder(position.getCols());
+                pathRows = new int[cells];
+                pathCols = new int[cells];
+                pathNodes = new Node[cells + 1];
+            }
+            if (found == null) {
+                root = new Node(-1, position.getKey());
+                nodeCount = 1;
+                return 0;
+            }
+            root = found;
+            nodeCount = root.visits + 1; // at most one node was added per playout
+            return root.visits;
+        }
+
+        private boolean sameShape(Board other) {
+            return board != null && board.getRows() == other.getRows() && board.getCols() == other.getCols()
+                    && board.getConnect() == other.getConnect();
+        }
+
+        private Node find(Node node, long key, int plies) {
+            if (plies == 0)
+                return (node.key == key) ? node : null;
+            if (plies < 0 || node.children == null)
+                return null;
+            for (Node child : node.children) {
+                if (child != null) {
+                    Node found = find(child, key, plies - 1);
+                    if (found != null)
+                        return found;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Run playouts until the quota, the deadline or a stop request.
+         */
+        void search() {
+            int maxNodes = Math.max(MAX_TREE_NODES / threads, 1);
+            while (played < quota && !stop) {
+                if ((played & TIME_CHECK_MASK) == 0 && System.nanoTime() >= deadline)
+                    break;
+                playout(nodeCount < maxNodes);
+                played++;
+            }
+        }
+
+        /**
+         * Select, expand, finish the game randomly and record the result.
+         */
+        private void playout(boolean grow) {
+            Node node = root;
+            int depth = 0;
+            int drops = 0;
+            char toMove = aiToken;
+            char other = opponentToken;
+            pathNodes[0] = root;
+
+            while (node.terminal == NONE) {
+                Node next = grow ? expand(node, toMove) : null;
+                boolean expanded = next != null;
+                if (!expanded) {
+                    next = select(node);
+                    if (next == null)
+                        break;
+                }
+                pathRows[drops] = board.drop(next.move, toMove);
+                pathCols[drops++] = next.move;
+                pathNodes[++depth] = next;
+                node = next;
+                char t = toMove;
+                toMove = other;
+                other = t;
+                if (expanded)
+                    break;
+            }
+
+            // result for the player who moved into the last node: 1 win, 0.5 draw, 0 loss
+            double result;
+            if (node.terminal == WIN) {
+                result = 1.0;
+            } else if (node.terminal == DRAW) {
+                result = 0.5;
+            } else {
+                char mover = other;
+                char winner = 0;
+                while (winner == 0 && !board.isFull()) {
+                    int col = randomColumn();
+                    int row = board.drop(col, toMove);
+                    pathRows[drops] = row;
+                    pathCols[drops++] = col;
+                    if (board.isWinningMove(row, col)) {
+                        winner = toMove;
+                    }
+                    char t = toMove;
+                    toMove = other;
+                    other = t;
+                }
+                result = (winner == 0) ? 0.5 : (winner == mover) ? 1.0 : 0.0;
+            }
+
+            for (int i = depth; i >= 0; i--) {
+                Node n = pathNodes[i];
+                n.visits++;
+                n.score += result;
+                result = 1.0 - result;
+            }
+            while (drops > 0) {
+                drops--;
+                board.undo(pathRows[drops], pathCols[drops]);
+            }
+        }
+
+        /**
+         * Add the next unexplored move of a node as a new child.
+         *
+         * @return the new child, or null when every move is explored
+         */
+        private Node expand(Node node, char toMove) {
+            while (node.nextOrder < order.length && board.isColumnFull(order[node.nextOrder])) {
+                node.nextOrder++;
+            }
+            if (node.nextOrder == order.length)
+                return null;
+            int col = order[node.nextOrder++];
+            if (node.children == null) {
+                node.children = new Node[order.length];
+            }
+            int row = board.drop(col, toMove);
+            Node child = new Node(col, board.getKey());
+            if (board.isWinningMove(row, col)) {
+                child.terminal = WIN;
+            } else if (board.isFull()) {
+                child.terminal = DRAW;
+            }
+            board.undo(row, col);
+            node.children[col] = child;
+            nodeCount++;
+            return child;
+        }
+
+        /**
+         * Pick the child with the best UCT value, or a child that wins on
+         * the spot.
+         *
+         * @return the chosen child, or null when the node has none
+         */
+        private Node select(Node node) {
+            if (node.children == null)
+                return null;
+            double logVisits = Math.log(Math.max(node.visits, 1));
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node child : node.children) {
+                if (child == null)
+                    continue;
+                if (child.terminal == WIN)
+                    return child;
+                double value = (child.visits == 0) ? Double.POSITIVE_INFINITY
+                        : child.score / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Pick a uniformly random column that is not full.
+         */
+        private int randomColumn() {
+            // xorshift64, retried until it hits a column with room
+            int col;
+            do {
+                rng ^= rng << 13;
+                rng ^= rng >>> 7;
+                rng ^= rng << 17;
+                col = (int) Long.remainderUnsigned(rng, order.length);
+            } while (board.isColumnFull(col));
+            return col;
+        }
+    }
+}
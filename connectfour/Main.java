@@ -13,6 +13,9 @@ public class Main {
     public static void main(String[] args) {
         try {
             Game game = new Game();
+            // player data is saved in the background; make sure it reaches the
+            // disk however the program ends, including Ctrl-C
+            Runtime.getRuntime().addShutdownHook(new Thread(game::close, "PlayerWriter-shutdown"));
             game.run();
         } catch (Exception e) {
             System.out.println("An error has occured: " + e.getMessage());
@@ -5,23 +5,13 @@ public class MediumAI implements AIPlayer {
     @Override
     public int chooseMove(Board board, char aiToken, char opponentToken) {
 
-        for (int c = 0; c < board.getCols(); c++) {
-            if (!board.isColumnFull(c)) {
-                Board temp = new Board(board);
-                int r = temp.drop(c, aiToken);
-                if (temp.isWinningMove(r, c))
-                    return c;
-            }
-        }
+        int win = board.findWinningColumn(aiToken);
+        if (win != -1)
+            return win;
 
-        for (int c = 0; c < board.getCols(); c++) {
-            if (!board.isColumnFull(c)) {
-                Board temp = new Board(board);
-                int r = temp.drop(c, opponentToken);
-                if (temp.isWinningMove(r, c))
-                    return c;
-            }
-        }
+        int block = board.findWinningColumn(opponentToken);
+        if (block != -1)
+            return block;
 
         return new EasyAI().chooseMove(board, aiToken, opponentToken);
     }
@@ -0,0 +1,131 @@
+package connectfour;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every profile on the heap, loaded at startup from a
+ * {@link PlayerSnapshot} plus {@link PlayerJournal}, and saves by
+ * appending the profiles changed since the last save to the journal.
+ * <p>
+ * Profiles are only added and changed by the thread running the game.
+ * Saving may run on a {@link PlayerWriter} thread, so the map is
+ * concurrent, and tournament threads only add names to the set of changed
+ * profiles.
+ * </p>
+ */
+public class MemoryPlayerStore implements PlayerStore {
+    private final PlayerJournal journal;
+    private Map<String, PlayerProfile> players = new ConcurrentHashMap<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet(); // profiles not saved yet
+
+    /**
+     * Create a store kept in the given snapshot file and its journal.
+     * Nothing is read until {@link #load()}.
+     *
+     * @param saveFile path of the snapshot
+     */
+    public MemoryPlayerStore(String saveFile) {
+        this.journal = new PlayerJournal(saveFile);
+    }
+
+    @Override
+    public synchronized void load() throws IOException {
+        players = new ConcurrentHashMap<>();
+        changed.clear();
+        players = journal.load();
+    }
+
+    @Override
+    public PlayerProfile get(String name) {
+        return players.get(name);
+    }
+
+    @Override
+    public PlayerProfile register(String name) {
+        if (players.containsKey(name))
+            return null;
+        PlayerProfile profile = new PlayerProfile(name);
+        put(profile);
+        return profile;
+    }
+
+    @Override
+    public void put(PlayerProfile profile) {
+        players.put(profile.getName(), profile);
+        changed.add(profile.getName());
+    }
+
+    @Override
+    public void changed(PlayerProfile profile) {
+        changed.add(profile.getName());
+    }
+
+    @Override
+    public void ratingChanged(Rating rating) {
+        if (rating.player != null)
+            changed.add(rating.player);
+    }
+
+    @Override
+    public void setPinned(PlayerProfile profile) {
+        // everything stays in memory
+    }
+
+    @Override
+    public long size() {
+        return players.size();
+    }
+
+    @Override
+    public void forEach(Consumer<PlayerProfile> action) {
+        players.values().forEach(action);
+    }
+
+    @Override
+    public void forEachLoaded(Consumer<PlayerProfile> action) {
+        players.values().forEach(action);
+    }
+
+    /**
+     * Append every profile changed since the last save to the journal. The
+     * cost depends on the number of changed profiles, not on the number
+     * of players. A profile changed many times since is written once.
+     */
+    @Override
+    public synchronized void save(boolean sync) throws IOException {
+        List<PlayerProfile> profiles = new ArrayList<>();
+        for (Iterator<String> it = changed.iterator(); it.hasNext();) {
+            PlayerProfile p = players.get(it.next());
+            it.remove();
+            if (p != null)
+                profiles.add(p);
+        }
+        try {
+            journal.append(profiles, sync);
+        } catch (IOException e) {
+            for (PlayerProfile p : profiles) {
+                changed.add(p.getName()); // retry with the next save
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Save, then fold the journal into a fresh snapshot and wait for it.
+     * This normally happens by itself in the background.
+     */
+    @Override
+    public void compact() throws IOException {
+        save(true);
+        journal.compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.awaitCompaction();
+        journal.close();
+    }
+}
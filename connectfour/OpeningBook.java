@@ -0,0 +1,267 @@
+package connectfour;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only opening book mapping positions to a precomputed best move.
+ * <p>
+ * The book is a binary file of fixed-width records sorted by position key
+ * (the board's Zobrist key XOR the side-to-move key). At runtime the file is
+ * memory-mapped and searched in place with binary search, so opening it
+ * costs no heap beyond this object and lookups touch only a few pages. The
+ * file is produced offline by {@link #main(String[])}, which runs a deep
+ * {@link HardAI} search on every position up to a given ply.
+ * </p>
+ */
+public class OpeningBook {
+    public static final String DEFAULT_FILE = "book.dat";
+
+    private static final int MAGIC = 0x43344F42; // "C4OB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final int cols;
+    private final int connect;
+    private final int ply;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book.");
+        }
+        this.rows = buffer.getInt(8);
+        this.cols = buffer.getInt(12);
+        this.connect = buffer.getInt(16);
+        this.ply = buffer.getInt(20);
+        this.count = buffer.getInt(24);
+        if ((long) HEADER_BYTES + (long) count * RECORD_BYTES > buffer.capacity()) {
+            throw new IOException("Opening book is truncated.");
+        }
+    }
+
+    /**
+     * Memory-map a book file.
+     *
+     * @param path book file
+     * @return the opened book
+     * @throws IOException when the file cannot be read or is not a book
+     */
+    public static OpeningBook open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Check whether this book was built for boards shaped like the given one.
+     *
+     * @param board board to check
+     * @return true when rows, columns and connect length all match
+     */
+    public boolean matches(Board board) {
+        return board.getRows() == rows && board.getCols() == cols && board.getConnect() == connect;
+    }
+
+    /**
+     * Returns the deepest ply (tokens on the board) covered by the book.
+     *
+     * @return book ply
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     *
+     * @return entry count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Find a position in the book.
+     *
+     * @param key board key XOR the side-to-move key
+     * @return entry index, or -1 when the position is not in the book
+     */
+    public int find(long key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = buffer.getLong(offset(mid));
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index entry index from {@link #find(long)}
+     * @return best column for the position
+     */
+    public int moveAt(int index) {
+        return buffer.getShort(offset(index) + 12);
+    }
+
+    /**
+     * @param index entry index from {@link #find(long)}
+     * @return search score of the best move, for the player to move
+     */
+    public int scoreAt(int index) {
+        return buffer.getInt(offset(index) + 8);
+    }
+
+    /**
+     * @param index entry index from {@link #find(long)}
+     * @return depth the position was searched to
+     */
+    public int depthAt(int index) {
+        return buffer.getShort(offset(index) + 14);
+    }
+
+    private static int offset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    /**
+     * Explanation of the file layout:
+     *
+     * - A 32-byte header: magic, version, rows, cols, connect, ply, entry
+     * count and one reserved int, all big-endian.
+     *
+     * - Then one 16-byte record per position, sorted by key as a signed
+     * long: key (8 bytes), score (4), best column (2) and searched depth (2).
+     * Fixed-width records make record i start at 32 + 16 * i, which is all
+     * the binary search needs.
+     *
+     * - Keys use {@link Board#getKey()} and {@link Board#sideKey(char)}, so a
+     * book only answers for the tokens it was built with ('X' moves first,
+     * then 'O'), which are the tokens {@link Game} uses.
+     */
+
+    /**
+     * Search every position with at most {@code ply} tokens and write the
+     * best moves to a book file.
+     *
+     * @param rows           board rows
+     * @param cols           board columns
+     * @param connect        connect length
+     * @param ply            deepest opening ply to include
+     * @param depth          search depth for each position
+     * @param moveTimeMillis time budget per position, or 0 for none
+     * @param path           book file to write
+     * @return number of positions written
+     * @throws IOException when the file cannot be written
+     */
+    public static int build(int rows, int cols, int connect, int ply, int depth, long moveTimeMillis,
+            String path) throws IOException {
+        HardAI ai = new HardAI(depth, 256, moveTimeMillis);
+        Map<Long, long[]> entries = new HashMap<>();
+        collect(new Board(rows, cols, connect), ply, 'X', 'O', ai, entries);
+
+        long[] keys = new long[entries.size()];
+        int n = 0;
+        for (long key : entries.keySet()) {
+            keys[n++] = key;
+        }
+        Arrays.sort(keys);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(cols);
+            out.writeInt(connect);
+            out.writeInt(ply);
+            out.writeInt(keys.length);
+            out.writeInt(0);
+            for (long key : keys) {
+                long[] e = entries.get(key);
+                out.writeLong(key);
+                out.writeInt((int) e[0]);
+                out.writeShort((int) e[1]);
+                out.writeShort((int) e[2]);
+            }
+        }
+        return keys.length;
+    }
+
+    private static void collect(Board board, int remaining, char toMove, char other,
+            HardAI ai, Map<Long, long[]> entries) {
+        if (board.isFull())
+            return;
+        long key = board.getKey() ^ Board.sideKey(toMove);
+        if (entries.containsKey(key))
+            return;
+
+        int move = ai.chooseMove(board, toMove, other);
+        entries.put(key, new long[] { ai.getLastScore(), move, ai.getLastDepth() });
+        if (entries.size() % 1000 == 0) {
+            System.out.println("Searched " + entries.size() + " positions...");
+        }
+        if (remaining == 0)
+            return;
+
+        for (int col = 0; col < board.getCols(); col++) {
+            if (board.isColumnFull(col))
+                continue;
+            int row = board.drop(col, toMove);
+            if (!board.isWinningMove(row, col)) {
+                collect(board, remaining - 1, other, toMove, ai, entries);
+            }
+            board.undo(row, col);
+        }
+    }
+
+    /**
+     * Offline builder:
+     * {@code java connectfour.OpeningBook <ply> <depth> [ms] [rows cols connect] [file]}.
+     *
+     * @param args book ply, search depth, optional time per position, board
+     *             shape and output file
+     * @throws IOException when the book cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java connectfour.OpeningBook <ply> <depth> [ms] [rows cols connect] [file]");
+            return;
+        }
+        int ply = Integer.parseInt(args[0]);
+        int depth = Integer.parseInt(args[1]);
+        long ms = (args.length >= 3) ? Long.parseLong(args[2]) : 0;
+        int rows = 6;
+        int cols = 7;
+        int connect = 4;
+        if (args.length >= 6) {
+            rows = Integer.parseInt(args[3]);
+            cols = Integer.parseInt(args[4]);
+            connect = Integer.parseInt(args[5]);
+        }
+        String path = (args.length >= 7) ? args[6] : DEFAULT_FILE;
+
+        long start = System.currentTimeMillis();
+        int written = build(rows, cols, connect, ply, depth, ms, path);
+        System.out.println("Wrote " + written + " positions up to ply " + ply + " to " + path
+                + " in " + (System.currentTimeMillis() - start) / 1000 + "s.");
+    }
+}
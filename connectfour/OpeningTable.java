@@ -0,0 +1,174 @@
+package connectfour;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Precomputed exact scores for every standard 7x6 position at one opening
+ * ply, used by {@link Solver} to avoid solving the early game from scratch.
+ * <p>
+ * Keys are the solver's canonical position keys (a position and its mirror
+ * share one entry) kept in a sorted {@code long[]} with the scores in a
+ * parallel {@code byte[]}, and looked up by binary search. The table is
+ * built once with {@link #main(String[])} and saved to a small binary file.
+ * </p>
+ */
+public class OpeningTable {
+    public static final int MISSING = Integer.MIN_VALUE;
+    public static final String DEFAULT_FILE = "openings.dat";
+
+    private static final int MAGIC = 0x43344F54; // "C4OT"
+    private static final int VERSION = 1;
+
+    private final int ply;
+    private final long[] keys;
+    private final byte[] scores;
+
+    private OpeningTable(int ply, long[] keys, byte[] scores) {
+        this.ply = ply;
+        this.keys = keys;
+        this.scores = scores;
+    }
+
+    /**
+     * Returns the number of tokens on the board in every stored position.
+     *
+     * @return opening ply
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns the number of stored positions.
+     *
+     * @return entry count
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Look up the score of a position.
+     *
+     * @param canonicalKey key from {@link Solver#canonicalKey(long, long)}
+     * @return the exact score for the player to move, or {@link #MISSING}
+     */
+    public int get(long canonicalKey) {
+        int i = Arrays.binarySearch(keys, canonicalKey);
+        return i >= 0 ? scores[i] : MISSING;
+    }
+
+    /**
+     * Solve every position reachable with exactly {@code ply} tokens on the
+     * board in which nobody has won yet.
+     *
+     * @param solver solver used for the positions
+     * @param ply    opening depth to tabulate
+     * @return the finished table
+     */
+    public static OpeningTable build(Solver solver, int ply) {
+        TreeMap<Long, Integer> results = new TreeMap<>();
+        Board board = new Board(Solver.HEIGHT, Solver.WIDTH, Solver.CONNECT);
+        collect(board, ply, 'X', 'O', solver, results);
+
+        long[] keys = new long[results.size()];
+        byte[] scores = new byte[results.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> e : results.entrySet()) {
+            keys[i] = e.getKey();
+            scores[i] = e.getValue().byteValue();
+            i++;
+        }
+        return new OpeningTable(ply, keys, scores);
+    }
+
+    private static void collect(Board board, int remaining, char toMove, char other,
+            Solver solver, Map<Long, Integer> results) {
+        if (remaining == 0) {
+            long key = Solver.canonicalKey(board, toMove);
+            if (!results.containsKey(key)) {
+                results.put(key, solver.solve(board, toMove));
+                if (results.size() % 1000 == 0) {
+                    System.out.println("Solved " + results.size() + " positions...");
+                }
+            }
+            return;
+        }
+        for (int col = 0; col < board.getCols(); col++) {
+            if (board.isColumnFull(col))
+                continue;
+            int row = board.drop(col, toMove);
+            if (!board.isWinningMove(row, col)) {
+                collect(board, remaining - 1, other, toMove, solver, results);
+            }
+            board.undo(row, col);
+        }
+    }
+
+    /**
+     * Write the table to a file.
+     *
+     * @param path file to write
+     * @throws IOException when the file cannot be written
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ply);
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+            out.write(scores);
+        }
+    }
+
+    /**
+     * Read a table written by {@link #save(String)}.
+     *
+     * @param path file to read
+     * @return the loaded table
+     * @throws IOException when the file cannot be read or is not a table
+     */
+    public static OpeningTable load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an opening table: " + path);
+            }
+            int ply = in.readInt();
+            int count = in.readInt();
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+            }
+            byte[] scores = new byte[count];
+            in.readFully(scores);
+            return new OpeningTable(ply, keys, scores);
+        }
+    }
+
+    /**
+     * Offline builder: {@code java connectfour.OpeningTable <ply> [file]}.
+     *
+     * @param args opening ply and optional output file
+     * @throws IOException when the table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java connectfour.OpeningTable <ply> [file]");
+            return;
+        }
+        int ply = Integer.parseInt(args[0]);
+        String path = (args.length >= 2) ? args[1] : DEFAULT_FILE;
+
+        long start = System.currentTimeMillis();
+        OpeningTable table = build(new Solver(), ply);
+        table.save(path);
+        System.out.println("Wrote " + table.size() + " positions at ply " + ply + " to " + path
+                + " in " + (System.currentTimeMillis() - start) / 1000 + "s.");
+    }
+}
@@ -0,0 +1,669 @@
+package connectfour;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Player profiles kept in memory-mapped files and only brought onto the
+ * heap while in use, so memory stays flat however many players there are.
+ * <p>
+ * Profiles are fixed-size records in a records file, found through an
+ * open-addressing hash index by name in a second file. Looking up or
+ * changing one player touches one or two index slots and one record, so
+ * the operating system only pages in what is used. The last
+ * {@link #CACHE_PROFILES} profiles used stay materialized in an LRU cache,
+ * plus the pinned one of the logged-in player.
+ * </p>
+ * <p>
+ * Every change is written through to the mapped record at once and the
+ * operating system writes it back, so a crash of the program loses
+ * nothing; {@link #save()} forces the changes to the device. Names are
+ * limited to {@link #NAME_BYTES} bytes of UTF-8.
+ * </p>
+ * <p>
+ * Files, for a store {@code players.store}:
+ * </p>
+ * <ul>
+ * <li>{@code players.store}: the records</li>
+ * <li>{@code players.store.index}: the hash index</li>
+ * <li>{@code players.store.index.tmp}: an index being grown</li>
+ * </ul>
+ * <p>
+ * All methods lock the store. Ratings changed by tournament threads are
+ * written with the rating system locked, so the store never calls into
+ * the rating system while locked.
+ * </p>
+ */
+public class PagedPlayerStore implements PlayerStore {
+    public static final int NAME_BYTES = 38;
+    public static final int CACHE_PROFILES = 1024;
+
+    private static final int RECORDS_MAGIC = 0x43345050; // "C4PP"
+    private static final int INDEX_MAGIC = 0x43345049; // "C4PI"
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 128; // the first one is the header
+    private static final int PROFILE_AT = 2 + NAME_BYTES; // PlayerProfile record after the name
+    private static final int INDEX_HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 8;
+    private static final int MIN_SLOTS = 1 << 10;
+    private static final int SCAN_BATCH = 4096;
+
+    private final Path recordsPath;
+    private final Path indexPath;
+    private final Path indexTemp;
+    private Pages records;
+    private Pages index;
+    private int count; // records in the file
+    private int slots; // index capacity, a power of two
+    private int indexed; // records in the index
+
+    private PlayerProfile pinned;
+    private final Map<String, PlayerProfile> cache = new LinkedHashMap<>(CACHE_PROFILES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlayerProfile> eldest) {
+            return size() > CACHE_PROFILES;
+        }
+    };
+    // Ratings handed out with a profile, which tournaments and open rating
+    // periods may still hold after the profile has left the cache
+    private final Map<String, LiveRating> live = new HashMap<>();
+    private final ReferenceQueue<Rating> unused = new ReferenceQueue<>();
+
+    /**
+     * Create a store kept in the given file and its index. Nothing is read
+     * until {@link #load()}.
+     *
+     * @param file path of the records file
+     */
+    public PagedPlayerStore(String file) {
+        this.recordsPath = Path.of(file);
+        this.indexPath = Path.of(file + ".index");
+        this.indexTemp = Path.of(file + ".index.tmp");
+    }
+
+    /**
+     * Convert player data kept by a {@link MemoryPlayerStore} into a paged
+     * store. Usage: {@code PagedPlayerStore <players.dat> <players.store>}.
+     *
+     * @param args source snapshot and destination store
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: PagedPlayerStore <players.dat> <players.store>");
+            return;
+        }
+        try {
+            MemoryPlayerStore from = new MemoryPlayerStore(args[0]);
+            from.load();
+            PagedPlayerStore to = new PagedPlayerStore(args[1]);
+            to.load();
+            from.forEach(to::put);
+            to.save(true);
+            to.close();
+            from.close();
+            System.out.println("Converted " + from.size() + " players to " + args[1] + ".");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to convert player data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open the files, creating them when missing, and bring the index up to
+     * date with records added after it was last written.
+     */
+    @Override
+    public synchronized void load() throws IOException {
+        close();
+        cache.clear();
+        live.clear();
+        pinned = null;
+        Files.deleteIfExists(indexTemp);
+        try {
+            records = new Pages(recordsPath);
+            boolean empty = records.size() < RECORD_BYTES;
+            ByteBuffer header = records.chunk(0, RECORD_BYTES);
+            if (empty) {
+                header.putInt(0, RECORDS_MAGIC);
+                header.putInt(4, VERSION);
+                header.putInt(8, RECORD_BYTES);
+                header.putLong(16, 0);
+                records.written(0);
+            } else if (header.getInt(0) != RECORDS_MAGIC) {
+                throw new IOException(recordsPath + " is not a player store.");
+            } else if (header.getInt(4) != VERSION || header.getInt(8) != RECORD_BYTES) {
+                throw new IOException(recordsPath + " was written by a newer version (format " + header.getInt(4)
+                        + ").");
+            }
+            long stored = header.getLong(16);
+            if (stored < 0 || stored >= Integer.MAX_VALUE || records.size() < recordAt((int) stored)) {
+                throw new IOException(recordsPath + " is truncated.");
+            }
+            count = (int) stored;
+            openIndex();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized PlayerProfile get(String name) {
+        if (pinned != null && pinned.getName().equals(name))
+            return pinned;
+        PlayerProfile p = cache.get(name);
+        if (p != null || records == null)
+            return p;
+        byte[] utf8 = encode(name);
+        int i = (utf8 == null) ? -1 : find(name, utf8);
+        if (i < 0)
+            return null;
+        p = materialize(i);
+        cache.put(name, p);
+        return p;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the name is longer than
+     *                                  {@link #NAME_BYTES} bytes
+     */
+    @Override
+    public synchronized PlayerProfile register(String name) {
+        byte[] utf8 = checkName(name);
+        if (get(name) != null)
+            return null;
+        PlayerProfile p = new PlayerProfile(name);
+        append(p, utf8);
+        live(p.getRating());
+        cache.put(name, p);
+        return p;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the name is longer than
+     *                                  {@link #NAME_BYTES} bytes
+     */
+    @Override
+    public synchronized void put(PlayerProfile profile) {
+        String name = profile.getName();
+        byte[] utf8 = checkName(name);
+        int i = find(name, utf8);
+        if (i < 0) {
+            append(profile, utf8);
+        } else {
+            write(i, profile);
+        }
+        if (pinned != null && pinned.getName().equals(name)) {
+            pinned = profile;
+        } else if (cache.containsKey(name)) {
+            cache.put(name, profile);
+        }
+        live(profile.getRating());
+    }
+
+    @Override
+    public synchronized void changed(PlayerProfile profile) {
+        if (records == null)
+            throw new IllegalStateException("The player store is not open.");
+        byte[] utf8 = encode(profile.getName());
+        int i = (utf8 == null) ? -1 : find(profile.getName(), utf8);
+        if (i >= 0)
+            write(i, profile);
+    }
+
+    @Override
+    public synchronized void ratingChanged(Rating rating) {
+        if (records == null || rating.player == null)
+            return;
+        byte[] utf8 = encode(rating.player);
+        int i = (utf8 == null) ? -1 : find(rating.player, utf8);
+        if (i < 0)
+            return;
+        long at = recordAt(i);
+        PlayerProfile.writeRating(records.chunk(at, RECORD_BYTES), Pages.offset(at) + PROFILE_AT, rating);
+        records.written(at);
+    }
+
+    @Override
+    public synchronized void setPinned(PlayerProfile profile) {
+        if (pinned != null && pinned != profile) {
+            cache.put(pinned.getName(), pinned);
+        }
+        pinned = profile;
+        if (profile != null) {
+            cache.remove(profile.getName());
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Read every record in order. The store is only locked while a batch
+     * of records is read, not while the profiles are visited.
+     */
+    @Override
+    public void forEach(Consumer<PlayerProfile> action) {
+        PlayerProfile[] batch = new PlayerProfile[SCAN_BATCH];
+        for (int from = 0;; from += SCAN_BATCH) {
+            int n;
+            synchronized (this) {
+                n = (records == null) ? 0 : Math.max(0, Math.min(SCAN_BATCH, count - from));
+                for (int k = 0; k < n; k++) {
+                    batch[k] = read(from + k);
+                }
+            }
+            if (n == 0)
+                return;
+            for (int k = 0; k < n; k++) {
+                action.accept(batch[k]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachLoaded(Consumer<PlayerProfile> action) {
+        List<PlayerProfile> loaded;
+        synchronized (this) {
+            loaded = new ArrayList<>(cache.values());
+            if (pinned != null)
+                loaded.add(pinned);
+        }
+        loaded.forEach(action);
+    }
+
+    /**
+     * Changes are in the mapped pages already, so only {@code sync} has
+     * anything to do: it forces the changed pages to the device, records
+     * before the index so the index never refers to a record that is not
+     * there.
+     */
+    @Override
+    public synchronized void save(boolean sync) throws IOException {
+        if (records == null)
+            throw new IOException("The player store is not open.");
+        if (sync) {
+            records.force();
+            index.force();
+        }
+    }
+
+    /**
+     * Records never move, so there is nothing to compact beyond saving.
+     */
+    @Override
+    public void compact() throws IOException {
+        save(true);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (records != null) {
+            records.close();
+            records = null;
+        }
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+        count = 0;
+    }
+
+    /**
+     * @return capacity of the hash index
+     */
+    synchronized int getIndexSlots() {
+        return slots;
+    }
+
+    /**
+     * Explanation of the index:
+     *
+     * - A slot holds the hash of a name and the number of its record plus
+     * one, 0 marking an empty slot. A name's search starts at the slot its
+     * hash selects and goes on to the following slots (linear probing)
+     * until it finds the record or an empty slot. Comparing the stored
+     * hashes first means that almost only the record sought is read.
+     *
+     * - The index is kept at most half full, so a search ends after about
+     * two slots. When it fills up, a twice larger index is built in a
+     * temporary file from the stored hashes alone, forced to disk and
+     * renamed over the old one.
+     *
+     * - A record is written before it is entered in the index, and the
+     * index header counts the records it holds. If the program stops in
+     * between, opening the store enters the records the index is missing,
+     * and an index that cannot be trusted is rebuilt from the records.
+     */
+    private void openIndex() throws IOException {
+        index = new Pages(indexPath);
+        long size = index.size();
+        ByteBuffer header = index.chunk(0, INDEX_HEADER_BYTES);
+        if (size >= INDEX_HEADER_BYTES && header.getInt(0) == INDEX_MAGIC && header.getInt(4) == VERSION) {
+            slots = header.getInt(8);
+            long stored = header.getLong(16);
+            if (Integer.bitCount(slots) == 1 && slots >= MIN_SLOTS && stored >= 0 && stored <= count
+                    && size >= slotAt(slots)) {
+                indexed = (int) stored;
+                for (int i = indexed; i < count; i++) {
+                    addToIndex(i);
+                }
+                return;
+            }
+        }
+        // missing or damaged: rebuild from the records
+        index.close();
+        Files.deleteIfExists(indexPath);
+        index = createIndex(indexPath, capacityFor(count));
+        for (int i = 0; i < count; i++) {
+            addToIndex(i);
+        }
+        index.force();
+    }
+
+    private Pages createIndex(Path path, int capacity) throws IOException {
+        Pages pages = new Pages(path);
+        ByteBuffer header = pages.chunk(0, INDEX_HEADER_BYTES);
+        header.putInt(0, INDEX_MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, capacity);
+        header.putLong(16, 0);
+        pages.chunk(slotAt(capacity) - 1, 1); // size the file so open() accepts it
+        pages.written(0);
+        slots = capacity;
+        indexed = 0;
+        return pages;
+    }
+
+    /**
+     * Enter a record in the index unless it is there already.
+     */
+    private void addToIndex(int i) throws IOException {
+        byte[] utf8 = nameAt(i);
+        String name = new String(utf8, StandardCharsets.UTF_8);
+        if (find(name, utf8) < 0) {
+            insert(hash(name), i);
+        }
+        indexed = i + 1;
+        index.chunk(0, INDEX_HEADER_BYTES).putLong(16, indexed);
+        index.written(0);
+        if ((long) indexed * 2 > slots) {
+            grow();
+        }
+    }
+
+    private void insert(int hash, int i) {
+        int mask = slots - 1;
+        for (int s = hash & mask;; s = (s + 1) & mask) {
+            long at = slotAt(s);
+            ByteBuffer b = index.chunk(at, SLOT_BYTES);
+            int o = Pages.offset(at);
+            if (b.getInt(o + 4) == 0) {
+                b.putInt(o, hash);
+                b.putInt(o + 4, i + 1); // last, so the slot is never half filled
+                index.written(at);
+                return;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        Pages old = index;
+        int oldSlots = slots;
+        int held = indexed;
+        Files.deleteIfExists(indexTemp);
+        index = createIndex(indexTemp, oldSlots * 2);
+        indexed = held;
+        try {
+            for (int s = 0; s < oldSlots; s++) {
+                long at = slotAt(s);
+                ByteBuffer b = old.chunk(at, SLOT_BYTES);
+                int ref = b.getInt(Pages.offset(at) + 4);
+                if (ref != 0)
+                    insert(b.getInt(Pages.offset(at)), ref - 1);
+            }
+            index.chunk(0, INDEX_HEADER_BYTES).putLong(16, indexed);
+            index.force();
+            Files.move(indexTemp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            index = old;
+            slots = oldSlots;
+            throw e;
+        }
+        old.close();
+    }
+
+    /**
+     * @return the number of the record holding the name, or -1
+     */
+    private int find(String name, byte[] utf8) {
+        int hash = hash(name);
+        int mask = slots - 1;
+        for (int s = hash & mask;; s = (s + 1) & mask) {
+            long at = slotAt(s);
+            ByteBuffer b = index.chunk(at, SLOT_BYTES);
+            int o = Pages.offset(at);
+            int ref = b.getInt(o + 4);
+            if (ref == 0)
+                return -1;
+            if (b.getInt(o) == hash && nameEquals(ref - 1, utf8))
+                return ref - 1;
+        }
+    }
+
+    private void append(PlayerProfile profile, byte[] utf8) {
+        if (records == null)
+            throw new IllegalStateException("The player store is not open.");
+        if (count == Integer.MAX_VALUE - 1)
+            throw new IllegalStateException("The player store is full.");
+        long at = recordAt(count);
+        ByteBuffer b = records.chunk(at, RECORD_BYTES);
+        int o = Pages.offset(at);
+        b.putShort(o, (short) utf8.length);
+        b.put(o + 2, utf8);
+        profile.writeRecord(b, o + PROFILE_AT, 0, utf8.length);
+        records.written(at);
+        count++;
+        records.chunk(0, RECORD_BYTES).putLong(16, count);
+        records.written(0);
+        try {
+            addToIndex(count - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(int i, PlayerProfile profile) {
+        long at = recordAt(i);
+        ByteBuffer b = records.chunk(at, RECORD_BYTES);
+        profile.writeRecord(b, Pages.offset(at) + PROFILE_AT, 0, b.getShort(Pages.offset(at)));
+        records.written(at);
+    }
+
+    private PlayerProfile read(int i) {
+        long at = recordAt(i);
+        ByteBuffer b = records.chunk(at, RECORD_BYTES);
+        String name = new String(nameAt(i), StandardCharsets.UTF_8);
+        return PlayerProfile.readRecord(b, Pages.offset(at) + PROFILE_AT, name);
+    }
+
+    /**
+     * Read a profile for the cache, sharing its rating with anyone who
+     * still holds the one handed out before.
+     */
+    private PlayerProfile materialize(int i) {
+        PlayerProfile p = read(i);
+        LiveRating held = live.get(p.getName());
+        Rating r = (held == null) ? null : held.get();
+        if (r != null) {
+            p.setRating(r);
+        } else {
+            live(p.getRating());
+        }
+        return p;
+    }
+
+    private void live(Rating r) {
+        for (LiveRating gone; (gone = (LiveRating) unused.poll()) != null;) {
+            live.remove(gone.name, gone);
+        }
+        live.put(r.player, new LiveRating(r, unused));
+    }
+
+    private byte[] nameAt(int i) {
+        long at = recordAt(i);
+        ByteBuffer b = records.chunk(at, RECORD_BYTES);
+        int o = Pages.offset(at);
+        byte[] utf8 = new byte[Math.min(b.getShort(o), NAME_BYTES)];
+        b.get(o + 2, utf8);
+        return utf8;
+    }
+
+    private boolean nameEquals(int i, byte[] utf8) {
+        long at = recordAt(i);
+        ByteBuffer b = records.chunk(at, RECORD_BYTES);
+        int o = Pages.offset(at);
+        if (b.getShort(o) != utf8.length)
+            return false;
+        for (int k = 0; k < utf8.length; k++) {
+            if (b.get(o + 2 + k) != utf8[k])
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] checkName(String name) {
+        byte[] utf8 = encode(name);
+        if (utf8 == null) {
+            throw new IllegalArgumentException("Player names are limited to " + NAME_BYTES + " bytes.");
+        }
+        return utf8;
+    }
+
+    /**
+     * @return the name in UTF-8, or null when it is too long to store
+     */
+    private static byte[] encode(String name) {
+        if (name.length() > NAME_BYTES)
+            return null;
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        return (utf8.length > NAME_BYTES) ? null : utf8;
+    }
+
+    // String.hashCode() of names like player1, player2, ... are consecutive,
+    // which would make long runs of full slots; mix the bits first
+    private static int hash(String name) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int capacityFor(int records) {
+        int capacity = MIN_SLOTS;
+        while ((long) capacity < 2L * records) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private static long recordAt(int i) {
+        return (i + 1L) * RECORD_BYTES;
+    }
+
+    private static long slotAt(int s) {
+        return INDEX_HEADER_BYTES + (long) s * SLOT_BYTES;
+    }
+
+    private static final class LiveRating extends WeakReference<Rating> {
+        final String name;
+
+        LiveRating(Rating r, ReferenceQueue<Rating> queue) {
+            super(r, queue);
+            this.name = r.player;
+        }
+    }
+
+    /**
+     * A file mapped read-write in chunks of up to {@link #CHUNK_BYTES}, each
+     * mapped when first used and mapped again, twice as large, when used
+     * past its end. Mapping past the end of the file grows it. Records and
+     * slots divide the chunk size, so none straddles two chunks.
+     */
+    private static final class Pages {
+        static final int CHUNK_SHIFT = 26;
+        static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+        static final int MIN_MAP = 1 << 16;
+
+        private final FileChannel channel;
+        private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+        private final BitSet dirty = new BitSet();
+
+        Pages(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+        }
+
+        static int offset(long position) {
+            return (int) (position & (CHUNK_BYTES - 1));
+        }
+
+        /**
+         * @return the chunk holding {@code bytes} bytes from {@code position};
+         *         index it with {@link #offset(long)}
+         */
+        ByteBuffer chunk(long position, int bytes) {
+            int c = (int) (position >>> CHUNK_SHIFT);
+            long end = offset(position) + (long) bytes;
+            if (c >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(c + 1, chunks.length * 2));
+            }
+            MappedByteBuffer m = chunks[c];
+            if (m == null || m.capacity() < end) {
+                long size = Math.max(end, (m == null) ? MIN_MAP : 2L * m.capacity());
+                try {
+                    // map what the file already holds at once, so reading it does not remap
+                    size = Math.max(size, Math.min(channel.size() - ((long) c << CHUNK_SHIFT), CHUNK_BYTES));
+                    chunks[c] = m = channel.map(FileChannel.MapMode.READ_WRITE, (long) c << CHUNK_SHIFT,
+                            Math.min(size, CHUNK_BYTES));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return m;
+        }
+
+        void written(long position) {
+            dirty.set((int) (position >>> CHUNK_SHIFT));
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        void force() {
+            for (int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+                chunks[c].force();
+            }
+            dirty.clear();
+        }
+
+        void close() throws IOException {
+            chunks = new MappedByteBuffer[0];
+            dirty.clear();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package connectfour;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Player data on disk as a snapshot plus a journal of changes since.
+ * <p>
+ * The snapshot is a {@link PlayerSnapshot}. Every save appends the
+ * profiles that changed to the journal, so a finished game costs one
+ * short record however many players there are. Loading reads the
+ * snapshot and replays the journal over it. Once the journal outgrows the
+ * snapshot it is folded into a new snapshot on a background thread, so
+ * the journal never makes up more than about half the data on disk. A
+ * compaction that fails is retried by later appends, waiting twice as long
+ * after every failure in a row, up to five minutes.
+ * </p>
+ * <p>
+ * Files, for a snapshot {@code players.dat}:
+ * </p>
+ * <ul>
+ * <li>{@code players.dat.journal}: the journal being appended to</li>
+ * <li>{@code players.dat.journal.old}: a journal being compacted</li>
+ * <li>{@code players.dat.tmp}: a snapshot being written</li>
+ * </ul>
+ */
+public class PlayerJournal {
+    private static final int MAGIC = 0x4334504A; // "C4PJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final byte PROFILE = 1;
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+    private static final long COMPACT_RETRY_MILLIS = 1000; // after the first failure, doubling
+    private static final long COMPACT_RETRY_MAX_MILLIS = 5 * 60 * 1000;
+
+    private final Path snapshot;
+    private final Path journal;
+    private final Path sealed;
+    private final Path temp;
+    private DataOutputStream out;
+    private FileOutputStream file;
+    private long journalBytes;
+    private long snapshotBytes;
+    private boolean unsynced; // appended records not forced to disk yet
+    private Thread compactor;
+    private volatile IOException compactionError; // last failure, for compact()
+    private int compactionFailures; // in a row
+    private long compactionRetryAt; // no automatic compaction before then
+
+    /**
+     * Create a journal for the given snapshot file. Nothing is read until
+     * {@link #load()}.
+     *
+     * @param snapshotFile path of the snapshot
+     */
+    public PlayerJournal(String snapshotFile) {
+        this.snapshot = Path.of(snapshotFile);
+        this.journal = Path.of(snapshotFile + ".journal");
+        this.sealed = Path.of(snapshotFile + ".journal.old");
+        this.temp = Path.of(snapshotFile + ".tmp");
+    }
+
+    /**
+     * Read the players and open the journal for appending.
+     *
+     * @return players by name
+     * @throws IOException when the files cannot be read
+     */
+    public Map<String, PlayerProfile> load() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            close();
+            Files.deleteIfExists(temp);
+            if (PlayerSnapshot.migrate(snapshot)) {
+                System.out.println("Player data converted to the binary snapshot format.");
+            }
+            Map<String, PlayerProfile> players = PlayerSnapshot.read(snapshot);
+            snapshotBytes = Files.exists(snapshot) ? Files.size(snapshot) : 0;
+            if (Files.exists(sealed)) {
+                replay(sealed, players);
+            }
+            long valid = Files.exists(journal) ? replay(journal, players) : 0;
+            open(valid);
+            compactionError = null;
+            compactionFailures = 0;
+            compactionRetryAt = 0;
+            if (Files.exists(sealed)) {
+                startCompaction(); // the last run was cut short
+            }
+            return players;
+        }
+    }
+
+    /**
+     * Append the current state of the given profiles and force it to disk.
+     *
+     * @param profiles changed profiles
+     * @throws IOException when writing fails
+     */
+    public void append(Collection<PlayerProfile> profiles) throws IOException {
+        append(profiles, true);
+    }
+
+    /**
+     * Append the current state of the given profiles and hand it to the
+     * operating system.
+     *
+     * @param profiles changed profiles; may be empty to only sync
+     * @param sync     whether to force everything appended so far, including
+     *                 earlier unforced records, to disk
+     * @throws IOException when writing fails
+     */
+    public synchronized void append(Collection<PlayerProfile> profiles, boolean sync) throws IOException {
+        if (out == null) {
+            throw new IOException("The journal is not open.");
+        }
+        if (profiles.isEmpty()) {
+            if (sync && unsynced) {
+                file.getFD().sync();
+                unsynced = false;
+            }
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (PlayerProfile p : profiles) {
+            bytes.reset();
+            record.writeByte(PROFILE);
+            p.writeTo(record);
+            crc.reset();
+            crc.update(bytes.toByteArray());
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeInt((int) crc.getValue());
+            journalBytes += bytes.size() + 8;
+        }
+        out.flush();
+        if (sync) {
+            file.getFD().sync();
+        }
+        unsynced = !sync;
+        if (journalBytes > Math.max(COMPACT_MIN_BYTES, snapshotBytes)
+                && System.currentTimeMillis() >= compactionRetryAt) {
+            startCompaction();
+        }
+    }
+
+    /**
+     * Fold the journal into the snapshot now and wait for it to finish.
+     *
+     * @throws IOException when compaction fails
+     */
+    public void compact() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            compactionError = null;
+            startCompaction();
+        }
+        awaitCompaction();
+        IOException e = compactionError;
+        if (e != null) {
+            compactionError = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a background compaction, if one is running, to finish.
+     */
+    public void awaitCompaction() {
+        Thread t;
+        synchronized (this) {
+            t = compactor;
+        }
+        if (t == null)
+            return;
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return bytes in the journal being appended to
+     */
+    public synchronized long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /**
+     * Close the journal file. Appending fails until the next
+     * {@link #load()}.
+     *
+     * @throws IOException when closing fails
+     */
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            if (unsynced) {
+                out.flush();
+                file.getFD().sync();
+                unsynced = false;
+            }
+            out.close();
+            out = null;
+            file = null;
+        }
+    }
+
+    /**
+     * Explanation of compaction:
+     *
+     * - Under the lock, the journal is renamed to journal.old and a fresh
+     * journal is started. This takes O(1), so saves barely wait.
+     *
+     * - The compactor then rebuilds the players from the old snapshot and
+     * journal.old alone, without touching the live map, and writes them to
+     * a temporary file. That file is forced to disk and renamed over the
+     * snapshot, and only then is journal.old deleted.
+     *
+     * - A crash at any point leaves a state load() can recover. Before the
+     * rename, the old snapshot plus both journals are complete. After it,
+     * journal.old is replayed over a snapshot that already contains it.
+     * That is harmless because each record holds a profile's whole state,
+     * not a change to it, so replaying a record twice changes nothing.
+     */
+    private void startCompaction() {
+        if (compactor != null && compactor.isAlive())
+            return;
+        compactionError = null;
+        try {
+            if (!Files.exists(sealed)) {
+                close();
+                Files.move(journal, sealed, StandardCopyOption.ATOMIC_MOVE);
+                open(0);
+            }
+        } catch (IOException e) {
+            compactionFailed(e);
+            if (out == null) {
+                try {
+                    open(journalBytes); // the journal was not moved; keep appending to it
+                } catch (IOException reopen) {
+                    System.err.println("Failed to reopen the player journal: " + reopen.getMessage());
+                }
+            }
+            return;
+        }
+        compactor = new Thread(this::runCompaction, "PlayerJournal-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    private void runCompaction() {
+        try {
+            Map<String, PlayerProfile> players = PlayerSnapshot.read(snapshot);
+            replay(sealed, players);
+            PlayerSnapshot.write(players.values(), temp);
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(sealed);
+            synchronized (this) {
+                snapshotBytes = Files.size(snapshot);
+                compactionFailures = 0;
+                compactionRetryAt = 0;
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                compactionFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Report a failed compaction and put off the next automatic one.
+     */
+    private void compactionFailed(IOException e) {
+        compactionError = e;
+        long wait = COMPACT_RETRY_MILLIS << Math.min(compactionFailures, 20);
+        compactionFailures++;
+        compactionRetryAt = System.currentTimeMillis() + Math.min(wait, COMPACT_RETRY_MAX_MILLIS);
+        System.err.println("Failed to compact player data: " + e.getMessage());
+    }
+
+    /**
+     * Open the journal for appending, cutting off anything after
+     * {@code valid} bytes and writing the header to a new file.
+     */
+    private void open(long valid) throws IOException {
+        if (valid < HEADER_BYTES) {
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(journal.toFile()))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+            valid = HEADER_BYTES;
+        } else if (Files.size(journal) > valid) {
+            try (RandomAccessFile raf = new RandomAccessFile(journal.toFile(), "rw")) {
+                raf.setLength(valid); // drop a record torn by a crash
+            }
+        }
+        file = new FileOutputStream(journal.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(file));
+        journalBytes = valid;
+    }
+
+    /**
+     * Apply a journal's records to the players, stopping at the first
+     * record that is incomplete or fails its checksum.
+     *
+     * @return number of bytes holding valid records, header included
+     */
+    private static long replay(Path path, Map<String, PlayerProfile> players) throws IOException {
+        long size = Files.size(path);
+        if (size < HEADER_BYTES)
+            return 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " is not a player journal.");
+            }
+            long valid = HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            while (size - valid >= 8) {
+                int length = in.readInt();
+                if (length <= 0 || length > size - valid - 8)
+                    break;
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (in.readInt() != (int) crc.getValue())
+                    break;
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                if (fields.readByte() == PROFILE) {
+                    PlayerProfile p = PlayerProfile.readFrom(fields);
+                    players.put(p.getName(), p);
+                }
+                valid += length + 8;
+            }
+            return valid;
+        }
+    }
+}
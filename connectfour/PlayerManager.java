@@ -1,41 +1,92 @@
 package connectfour;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class PlayerManager {
     private static final String SAVE_FILE = "players.dat";
+    private static final String STORE_FILE = "players.store";
 
-    private Map<String, PlayerProfile> players;
+    private final PlayerStore store;
+    private final Leaderboard leaderboard; // null for a paged store, which is scanned instead
     private PlayerProfile currentPlayer;
+    private final RatingSystem ratings = new RatingSystem();
+    private final PlayerWriter writer;
+    private boolean closed;
 
+    /**
+     * Create a manager for players.store when that file exists, otherwise
+     * for players.dat.
+     */
     public PlayerManager() {
+        this(Files.exists(Path.of(STORE_FILE)) ? STORE_FILE : SAVE_FILE);
+    }
+
+    /**
+     * Create a manager that keeps its players in the given file instead of
+     * players.dat. A file named *.store is a {@link PagedPlayerStore}, which
+     * only keeps the players in use in memory; any other name is a
+     * {@link MemoryPlayerStore}.
+     *
+     * @param saveFile path of the player data file
+     */
+    public PlayerManager(String saveFile) {
+        this(saveFile.endsWith(".store") ? new PagedPlayerStore(saveFile) : new MemoryPlayerStore(saveFile));
+    }
+
+    /**
+     * Create a manager for the given store.
+     *
+     * @param store where the players are kept
+     */
+    public PlayerManager(PlayerStore store) {
+        this.store = store;
+        // an index of every player would undo the point of a paged store
+        this.leaderboard = (store instanceof MemoryPlayerStore) ? new Leaderboard(store) : null;
+        // tournament matches and closed rating periods change profiles from outside
+        ratings.setListener(r -> {
+            store.ratingChanged(r);
+            if (leaderboard != null)
+                leaderboard.ratingChanged(r);
+        });
         load();
+        this.writer = new PlayerWriter(store);
     }
 
     public void register(String name) {
-        if (players.containsKey(name)) {
+        PlayerProfile profile;
+        try {
+            profile = store.register(name);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (profile == null) {
             System.out.println("Player already exists.");
             return;
         }
-        PlayerProfile profile = new PlayerProfile(name);
-        players.put(name, profile);
+        if (leaderboard != null)
+            leaderboard.update(profile);
         save();
         System.out.println("Registered new player: " + name);
     }
 
     public void login(String name) {
-        PlayerProfile profile = players.get(name);
+        PlayerProfile profile = find(name);
         if (profile == null) {
             System.out.println("This player doesn't exist'.");
             return;
         }
         currentPlayer = profile;
+        store.setPinned(profile);
         System.out.println("Logged in as: " + name);
     }
 
     public void logout() {
         currentPlayer = null;
+        store.setPinned(null);
         System.out.println("Logged out.");
     }
 
@@ -44,7 +95,7 @@ public class PlayerManager {
     }
 
     public void profile(String name) {
-        PlayerProfile p = players.get(name);
+        PlayerProfile p = find(name);
         if (p == null) {
             System.out.println("Player doesn't exist.");
         } else {
@@ -52,40 +103,231 @@ public class PlayerManager {
         }
     }
 
+    /**
+     * Print the best players by rating.
+     *
+     * @param topN number of players to show
+     */
     public void leaderboard(int topN) {
-        List<PlayerProfile> sorted = new ArrayList<>(players.values());
-        sorted.sort(Comparator.comparingInt(PlayerProfile::getWinCount).reversed()
-                .thenComparing(PlayerProfile::getName));
-        System.out.println("Top " + topN + " players:");
-        for (int i = 0; i < Math.min(topN, sorted.size()); i++) {
-            PlayerProfile p = sorted.get(i);
-            System.out.printf("%d. %s - %d wins\n", i + 1, p.getName(), p.getWinCount());
+        leaderboard(topN, Leaderboard.Order.RATING);
+    }
+
+    /**
+     * Print the best players in an ordering.
+     *
+     * @param topN  number of players to show
+     * @param order how to rank the players
+     */
+    public void leaderboard(int topN, Leaderboard.Order order) {
+        List<PlayerProfile> best = new ArrayList<>();
+        if (leaderboard != null) {
+            for (String name : leaderboard.top(order, topN)) {
+                best.add(store.get(name));
+            }
+        } else {
+            best = scanTop(topN, order.comparator());
+        }
+        System.out.println("Top " + topN + " players by " + order.getKey() + ":");
+        for (int i = 0; i < best.size(); i++) {
+            PlayerProfile p = best.get(i);
+            System.out.printf("%d. %s - %s\n", i + 1, p.getName(), order.describe(p));
+        }
+    }
+
+    /**
+     * Print the logged-in player's place in an ordering.
+     *
+     * @param order how to rank the players
+     */
+    public void rank(Leaderboard.Order order) {
+        if (currentPlayer == null) {
+            System.out.println("No player is logged in.");
+            return;
+        }
+        long place;
+        if (leaderboard != null) {
+            place = leaderboard.rank(order, currentPlayer.getName());
+        } else {
+            Comparator<PlayerProfile> comparator = order.comparator();
+            long[] ahead = { 0 };
+            store.forEach(p -> {
+                if (comparator.compare(p, currentPlayer) < 0)
+                    ahead[0]++;
+            });
+            place = ahead[0] + 1;
+        }
+        System.out.printf("%s is ranked %d of %d by %s: %s\n", currentPlayer.getName(), place, store.size(),
+                order.getKey(), order.describe(currentPlayer));
+    }
+
+    /**
+     * Find the best players of a paged store in one pass, keeping only the
+     * best {@code topN} seen so far.
+     */
+    private List<PlayerProfile> scanTop(int topN, Comparator<PlayerProfile> order) {
+        PriorityQueue<PlayerProfile> best = new PriorityQueue<>(order.reversed());
+        if (topN > 0) {
+            store.forEach(p -> {
+                if (best.size() < topN) {
+                    best.add(p);
+                } else if (order.compare(p, best.peek()) < 0) {
+                    best.poll();
+                    best.add(p);
+                }
+            });
+        }
+        List<PlayerProfile> sorted = new ArrayList<>(best);
+        sorted.sort(order);
+        return sorted;
+    }
+
+    /**
+     * Record a finished game for the logged-in player and rate it.
+     *
+     * @param isAI     whether the opponent was an AI
+     * @param result   1 for a win, 0 for a draw, -1 for a loss
+     * @param opponent opponent's rating, or null to leave the rating alone
+     *                 when the opponent is unknown
+     */
+    public void recordResult(boolean isAI, int result, Rating opponent) {
+        if (currentPlayer == null)
+            return;
+        currentPlayer.recordResult(isAI, result);
+        store.changed(currentPlayer);
+        if (opponent != null) {
+            ratings.record(currentPlayer.getRating(), opponent, (result + 1) / 2.0);
         }
+        if (leaderboard != null)
+            leaderboard.update(currentPlayer);
+    }
+
+    /**
+     * Returns the rating of a registered player, so games outside this
+     * manager, such as tournament matches, can be rated.
+     *
+     * @param name player name
+     * @return the rating, or null when no such player is registered
+     */
+    public Rating ratingOf(String name) {
+        PlayerProfile p = find(name);
+        return (p == null) ? null : p.getRating();
+    }
+
+    /**
+     * @return the rating system all players here are rated with
+     */
+    public RatingSystem getRatings() {
+        return ratings;
+    }
+
+    /**
+     * Add or replace a profile without saving, for bulk imports.
+     *
+     * @param profile profile to add
+     */
+    void add(PlayerProfile profile) {
+        store.put(profile);
+        if (leaderboard != null)
+            leaderboard.update(profile);
+    }
+
+    /**
+     * @return where the players are kept
+     */
+    PlayerStore getStore() {
+        return store;
     }
 
     public PlayerProfile getCurrentPlayer() {
         return currentPlayer;
     }
 
+    /**
+     * Hand the changes made so far to the background writer, which saves
+     * them shortly. Returns at once.
+     */
     public void save() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(SAVE_FILE))) {
-            out.writeObject(players);
+        writer.changed();
+    }
+
+    /**
+     * Save every change so far, force it to disk and wait for it.
+     *
+     * @return false when the save failed
+     */
+    public boolean flush() {
+        return writer.flush();
+    }
+
+    /**
+     * @return the background writer, to tune when it saves
+     */
+    public PlayerWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Save, then rewrite the stored data compactly and wait for it. This
+     * normally happens by itself in the background.
+     */
+    public void compact() {
+        writer.flush();
+        try {
+            store.compact();
         } catch (IOException e) {
-            System.err.println("Failed to save player data.");
+            System.err.println("Failed to compact player data.");
         }
     }
 
-    public void load() {
-        File file = new File(SAVE_FILE);
-        if (!file.exists()) {
-            players = new HashMap<>();
-            return;
+    /**
+     * Flush, stop the background writer and close the files. Nothing is
+     * saved afterwards; calling it again does nothing.
+     *
+     * @return false when the last changes could not be saved; true when
+     *         they were, or the manager was already closed
+     */
+    public synchronized boolean close() {
+        if (closed)
+            return true;
+        closed = true;
+        boolean saved = writer.close();
+        try {
+            store.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close player data.");
+            saved = false;
         }
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            players = (Map<String, PlayerProfile>) in.readObject();
+        return saved;
+    }
+
+    public void load() {
+        if (writer != null)
+            writer.flush(); // the writer must not save while the store reloads
+        String current = (currentPlayer == null) ? null : currentPlayer.getName();
+        currentPlayer = null;
+        try {
+            store.load();
         } catch (Exception e) {
             System.err.println("Failed to load player data.");
-            players = new HashMap<>();
         }
+        if (leaderboard != null)
+            leaderboard.clear();
+        // games left in an open rating period when the data was saved
+        store.forEachLoaded(p -> ratings.resume(p.getRating()));
+        if (current != null) {
+            currentPlayer = find(current);
+            store.setPinned(currentPlayer);
+        }
+    }
+
+    /**
+     * Look a player up, taking over any games of an open rating period saved
+     * with a profile that was not in memory until now.
+     */
+    private PlayerProfile find(String name) {
+        PlayerProfile p = store.get(name);
+        if (p != null)
+            ratings.resume(p.getRating());
+        return p;
     }
 }
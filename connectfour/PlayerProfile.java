@@ -1,26 +1,54 @@
 package connectfour;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 
 public class PlayerProfile implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int HISTORY = 10;
+
+    /**
+     * Bytes of one profile in a binary snapshot, name excluded; see
+     * {@link #writeRecord(ByteBuffer, int, int, int)}.
+     */
+    static final int RECORD_BYTES = 88;
+
+    // The serialized form still has the list of last results that players.dat
+    // files from before the binary snapshot hold, so they can be migrated.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("wins", int.class),
+            new ObjectStreamField("draws", int.class),
+            new ObjectStreamField("losses", int.class),
+            new ObjectStreamField("aiWins", int.class),
+            new ObjectStreamField("aiDraws", int.class),
+            new ObjectStreamField("aiLosses", int.class),
+            new ObjectStreamField("lastResults", LinkedList.class),
+            new ObjectStreamField("rating", Rating.class) };
 
     private String name;
     private int wins, draws, losses;
     private int aiWins, aiDraws, aiLosses;
-    private LinkedList<Integer> lastResults;
+    private int recent; // last results as 2-bit codes (result + 1), newest in the low bits
+    private int recentCount;
+    private Rating rating;
 
     public PlayerProfile(String name) {
         this.name = name;
-        this.lastResults = new LinkedList<>();
     }
 
     public String getName() {
         return name;
     }
 
-    public void recordResult(boolean isAI, int result) {
+    public synchronized void recordResult(boolean isAI, int result) {
         if (result == 1) {
             wins++;
             if (isAI)
@@ -35,21 +63,244 @@ public class PlayerProfile implements Serializable {
                 aiLosses++;
         }
 
-        lastResults.add(result);
-        if (lastResults.size() > 10)
-            lastResults.removeFirst();
+        addRecent(result);
+    }
+
+    private void addRecent(int result) {
+        recent = ((recent << 2) | (result + 1)) & ((1 << (2 * HISTORY)) - 1);
+        if (recentCount < HISTORY)
+            recentCount++;
+    }
+
+    /**
+     * @param i 0 for the oldest of the last results kept
+     * @return that result: 1, 0 or -1
+     */
+    private int recentResult(int i) {
+        return ((recent >>> (2 * (recentCount - 1 - i))) & 3) - 1;
     }
 
     public int getWinCount() {
         return wins;
     }
 
+    public int getDrawCount() {
+        return draws;
+    }
+
+    public int getLossCount() {
+        return losses;
+    }
+
+    public int getAIWinCount() {
+        return aiWins;
+    }
+
+    /**
+     * @return games won, drawn or lost
+     */
+    public int getGameCount() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * @return the player's rating; profiles saved before ratings existed
+     *         start from a new one
+     */
+    public synchronized Rating getRating() {
+        if (rating == null)
+            rating = new Rating();
+        if (rating.player == null)
+            rating.player = name; // lost on deserialization
+        return rating;
+    }
+
+    /**
+     * Replace the rating with one already in use elsewhere, so a profile
+     * read again from disk shares it with whoever holds the old one.
+     *
+     * @param rating the rating to use
+     */
+    synchronized void setRating(Rating rating) {
+        this.rating = rating;
+        rating.player = name;
+    }
+
+    /**
+     * Write the whole profile compactly, for the player journal. Like
+     * {@link #recordResult(boolean, int)} it locks the profile, so a save
+     * on another thread never sees half a game.
+     *
+     * @param out destination
+     * @throws IOException when writing fails
+     */
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeInt(wins);
+        out.writeInt(draws);
+        out.writeInt(losses);
+        out.writeInt(aiWins);
+        out.writeInt(aiDraws);
+        out.writeInt(aiLosses);
+        out.writeByte(recentCount);
+        for (int i = 0; i < recentCount; i++) {
+            out.writeByte(recentResult(i));
+        }
+        getRating().writeTo(out);
+    }
+
+    /**
+     * Read a profile written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in source
+     * @return the profile
+     * @throws IOException when reading fails
+     */
+    static PlayerProfile readFrom(DataInput in) throws IOException {
+        PlayerProfile p = new PlayerProfile(in.readUTF());
+        p.wins = in.readInt();
+        p.draws = in.readInt();
+        p.losses = in.readInt();
+        p.aiWins = in.readInt();
+        p.aiDraws = in.readInt();
+        p.aiLosses = in.readInt();
+        int count = in.readByte();
+        for (int i = 0; i < count; i++) {
+            p.addRecent(in.readByte());
+        }
+        p.rating = Rating.readFrom(in);
+        p.rating.player = p.name;
+        return p;
+    }
+
+    /**
+     * Write the profile as a fixed-width record of {@link #RECORD_BYTES}
+     * bytes. The name is stored elsewhere and only referenced.
+     *
+     * <pre>
+     *  0 int    name offset      36 int    rated games
+     *  4 short  name length      40 int    games in the open period
+     *  6 byte   last results     44 int    (unused)
+     *  7 byte   (unused)         48 double rating
+     *  8 int    last results     56 double deviation
+     * 12 int[6] wins, draws,     64 double volatility
+     *           losses, AI wins, 72 double open period variance sum
+     *           draws, losses    80 double open period improvement sum
+     * </pre>
+     *
+     * @param buf        destination
+     * @param at         offset of the record in {@code buf}
+     * @param nameOffset where the name is stored
+     * @param nameLength length of the stored name in bytes
+     */
+    synchronized void writeRecord(ByteBuffer buf, int at, int nameOffset, int nameLength) {
+        Rating r = getRating();
+        buf.putInt(at, nameOffset);
+        buf.putShort(at + 4, (short) nameLength);
+        buf.put(at + 6, (byte) recentCount);
+        buf.put(at + 7, (byte) 0);
+        buf.putInt(at + 8, recent);
+        buf.putInt(at + 12, wins);
+        buf.putInt(at + 16, draws);
+        buf.putInt(at + 20, losses);
+        buf.putInt(at + 24, aiWins);
+        buf.putInt(at + 28, aiDraws);
+        buf.putInt(at + 32, aiLosses);
+        buf.putInt(at + 44, 0);
+        writeRating(buf, at, r);
+    }
+
+    /**
+     * Overwrite only the rating fields of a record written by
+     * {@link #writeRecord(ByteBuffer, int, int, int)}.
+     *
+     * @param buf destination
+     * @param at  offset of the record in {@code buf}
+     * @param r   rating to store
+     */
+    static void writeRating(ByteBuffer buf, int at, Rating r) {
+        buf.putInt(at + 36, r.games);
+        buf.putInt(at + 40, r.pendingGames);
+        buf.putDouble(at + 48, r.rating);
+        buf.putDouble(at + 56, r.deviation);
+        buf.putDouble(at + 64, r.volatility);
+        buf.putDouble(at + 72, r.pendingVariance);
+        buf.putDouble(at + 80, r.pendingImprovement);
+    }
+
+    /**
+     * Read a record written by {@link #writeRecord(ByteBuffer, int, int, int)}.
+     *
+     * @param buf  source
+     * @param at   offset of the record in {@code buf}
+     * @param name the name the record refers to
+     * @return the profile
+     */
+    static PlayerProfile readRecord(ByteBuffer buf, int at, String name) {
+        PlayerProfile p = new PlayerProfile(name);
+        p.recentCount = Math.min(buf.get(at + 6), HISTORY);
+        p.recent = buf.getInt(at + 8);
+        p.wins = buf.getInt(at + 12);
+        p.draws = buf.getInt(at + 16);
+        p.losses = buf.getInt(at + 20);
+        p.aiWins = buf.getInt(at + 24);
+        p.aiDraws = buf.getInt(at + 28);
+        p.aiLosses = buf.getInt(at + 32);
+        p.rating = Rating.restore(buf.getDouble(at + 48), buf.getDouble(at + 56), buf.getDouble(at + 64),
+                buf.getInt(at + 36), buf.getDouble(at + 72), buf.getDouble(at + 80), buf.getInt(at + 40));
+        p.rating.player = name;
+        return p;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        LinkedList<Integer> lastResults = new LinkedList<>();
+        for (int i = 0; i < recentCount; i++) {
+            lastResults.add(recentResult(i));
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("wins", wins);
+        fields.put("draws", draws);
+        fields.put("losses", losses);
+        fields.put("aiWins", aiWins);
+        fields.put("aiDraws", aiDraws);
+        fields.put("aiLosses", aiLosses);
+        fields.put("lastResults", lastResults);
+        fields.put("rating", rating);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        wins = fields.get("wins", 0);
+        draws = fields.get("draws", 0);
+        losses = fields.get("losses", 0);
+        aiWins = fields.get("aiWins", 0);
+        aiDraws = fields.get("aiDraws", 0);
+        aiLosses = fields.get("aiLosses", 0);
+        rating = (Rating) fields.get("rating", null);
+        LinkedList<Integer> lastResults = (LinkedList<Integer>) fields.get("lastResults", null);
+        if (lastResults != null) {
+            for (int r : lastResults) {
+                addRecent(r);
+            }
+        }
+    }
+
     public void printProfile() {
         System.out.println("Player: " + name);
         System.out.println("W/D/L: " + wins + "/" + draws + "/" + losses);
         System.out.println("AI W/D/L: " + aiWins + "/" + aiDraws + "/" + aiLosses);
+        Rating rated = getRating();
+        System.out.println("Rating: " + rated + " (" + rated.getGames() + " rated games"
+                + (rated.getPendingGames() > 0 ? ", " + rated.getPendingGames() + " waiting for the period to close"
+                        : "")
+                + ")");
         System.out.print("Last 10: ");
-        for (int r : lastResults) {
+        for (int i = 0; i < recentCount; i++) {
+            int r = recentResult(i);
             System.out.print((r == 1 ? "W " : (r == 0 ? "D " : "L ")));
         }
         System.out.println();
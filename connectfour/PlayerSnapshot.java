@@ -0,0 +1,271 @@
+package connectfour;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary snapshot of every player profile.
+ * <p>
+ * The file is a header, a directory of segments and the segments
+ * themselves. Each segment holds up to {@link #SEGMENT_PROFILES} profiles
+ * as fixed-width records (see {@link PlayerProfile#RECORD_BYTES})
+ * followed by a string table of their names, and carries its own CRC-32C.
+ * Segments are independent, so loading maps the file through NIO and
+ * decodes and checks them on all cores at once.
+ * </p>
+ *
+ * <pre>
+ * header (32 bytes)            directory entry (24 bytes, one per segment)
+ *  0 int  magic "C4PS"          0 long offset of the segment in the file
+ *  4 int  format version        8 int  bytes in the segment
+ *  8 int  record width         12 int  profiles in the segment
+ * 12 int  segment count        16 int  CRC-32C of the segment
+ * 16 long profile count        20 int  (unused)
+ * 24 int  CRC-32C of header and directory, computed with this field 0
+ * 28 int  (unused)
+ * </pre>
+ * <p>
+ * Files written by earlier versions, which were a serialized
+ * {@code HashMap}, are recognized by their first bytes and read the old
+ * way; {@link #migrate(Path)} rewrites them in this format once.
+ * </p>
+ */
+public class PlayerSnapshot {
+    public static final int SEGMENT_PROFILES = 1 << 16;
+
+    private static final int MAGIC = 0x43345053; // "C4PS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 24;
+    private static final int SERIALIZED_MAGIC = 0xACED0005; // Java serialization stream header
+
+    private PlayerSnapshot() {
+    }
+
+    /**
+     * Read a snapshot in either format.
+     *
+     * @param path snapshot file
+     * @return players by name in a concurrent map; empty when the file does
+     *         not exist
+     * @throws IOException when the file cannot be read or is damaged
+     */
+    public static Map<String, PlayerProfile> read(Path path) throws IOException {
+        if (!Files.exists(path))
+            return new ConcurrentHashMap<>();
+        if (isSerialized(path))
+            return readSerialized(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a player snapshot.");
+            }
+            if (header.getInt(4) != VERSION || header.getInt(8) != PlayerProfile.RECORD_BYTES) {
+                throw new IOException(path + " was written by a newer version (format " + header.getInt(4) + ").");
+            }
+            int segments = header.getInt(12);
+            long count = header.getLong(16);
+            if (count < 0 || count > Integer.MAX_VALUE
+                    || segments != (count + SEGMENT_PROFILES - 1) / SEGMENT_PROFILES) {
+                throw new IOException(path + " has a damaged header.");
+            }
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + segments * ENTRY_BYTES);
+            readFully(channel, head, 0);
+            int stored = head.getInt(24);
+            head.putInt(24, 0);
+            if (crc(head.rewind()) != stored) {
+                throw new IOException(path + " has a damaged header.");
+            }
+
+            MappedByteBuffer[] maps = new MappedByteBuffer[segments];
+            int[] expected = new int[segments];
+            int[] counts = new int[segments];
+            for (int s = 0; s < segments; s++) {
+                int e = HEADER_BYTES + s * ENTRY_BYTES;
+                long offset = head.getLong(e);
+                int bytes = head.getInt(e + 8);
+                counts[s] = head.getInt(e + 12);
+                expected[s] = head.getInt(e + 16);
+                if (offset < 0 || bytes < 0 || offset + bytes > channel.size()
+                        || (long) counts[s] * PlayerProfile.RECORD_BYTES > bytes) {
+                    throw new IOException(path + " is truncated.");
+                }
+                maps[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+            }
+
+            PlayerProfile[][] decoded = new PlayerProfile[segments][];
+            try {
+                IntStream.range(0, segments).parallel().forEach(s -> {
+                    if (crc(maps[s].duplicate()) != expected[s]) {
+                        throw new UncheckedIOException(new IOException(path + ": segment " + s + " is damaged."));
+                    }
+                    decoded[s] = decode(maps[s], counts[s]);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            Map<String, PlayerProfile> players = new ConcurrentHashMap<>((int) (count / 0.75f) + 1);
+            for (PlayerProfile[] segment : decoded) {
+                for (PlayerProfile p : segment) {
+                    players.put(p.getName(), p);
+                }
+            }
+            return players;
+        }
+    }
+
+    /**
+     * Write a snapshot. The file is forced to disk before this returns; to
+     * replace a snapshot safely, write to a temporary file and rename it.
+     *
+     * @param players players to write
+     * @param path    destination
+     * @throws IOException when writing fails
+     */
+    public static void write(Collection<PlayerProfile> players, Path path) throws IOException {
+        PlayerProfile[] all = players.toArray(new PlayerProfile[0]);
+        int segments = (all.length + SEGMENT_PROFILES - 1) / SEGMENT_PROFILES;
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + segments * ENTRY_BYTES);
+        head.putInt(0, MAGIC);
+        head.putInt(4, VERSION);
+        head.putInt(8, PlayerProfile.RECORD_BYTES);
+        head.putInt(12, segments);
+        head.putLong(16, all.length);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = head.capacity();
+            for (int s = 0; s < segments; s++) {
+                int from = s * SEGMENT_PROFILES;
+                ByteBuffer segment = encode(all, from, Math.min(all.length, from + SEGMENT_PROFILES));
+                int e = HEADER_BYTES + s * ENTRY_BYTES;
+                head.putLong(e, offset);
+                head.putInt(e + 8, segment.capacity());
+                head.putInt(e + 12, Math.min(all.length, from + SEGMENT_PROFILES) - from);
+                head.putInt(e + 16, crc(segment.duplicate()));
+                writeFully(channel, segment, offset);
+                offset += segment.capacity();
+            }
+            head.putInt(24, crc(head.duplicate().rewind()));
+            writeFully(channel, head.rewind(), 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Rewrite a snapshot in the serialized format of earlier versions in
+     * this format. The old file is kept next to it with the suffix
+     * {@code .serialized}. Does nothing when the file is missing or
+     * already binary.
+     *
+     * @param path snapshot file
+     * @return whether the file was migrated
+     * @throws IOException when the file cannot be read or rewritten
+     */
+    public static boolean migrate(Path path) throws IOException {
+        if (!Files.exists(path) || !isSerialized(path))
+            return false;
+        Map<String, PlayerProfile> players = readSerialized(path);
+        Path temp = Path.of(path + ".migrating");
+        write(players.values(), temp);
+        Files.copy(path, Path.of(path + ".serialized"), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Explanation of a segment:
+     *
+     * - Records come first, {@link PlayerProfile#RECORD_BYTES} each, so
+     * record i sits at i * RECORD_BYTES and can be read without touching
+     * any other.
+     *
+     * - The string table follows: every name in UTF-8, back to back. A
+     * record holds its name's offset into the table and its length, which
+     * keeps the records fixed-width however long the names are.
+     */
+    private static ByteBuffer encode(PlayerProfile[] all, int from, int to) {
+        byte[][] names = new byte[to - from][];
+        int tableBytes = 0;
+        for (int i = from; i < to; i++) {
+            names[i - from] = all[i].getName().getBytes(StandardCharsets.UTF_8);
+            if (names[i - from].length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Player name too long: " + all[i].getName());
+            }
+            tableBytes += names[i - from].length;
+        }
+        int recordBytes = (to - from) * PlayerProfile.RECORD_BYTES;
+        ByteBuffer buf = ByteBuffer.allocate(recordBytes + tableBytes);
+        int nameOffset = 0;
+        for (int i = from; i < to; i++) {
+            byte[] name = names[i - from];
+            all[i].writeRecord(buf, (i - from) * PlayerProfile.RECORD_BYTES, nameOffset, name.length);
+            buf.put(recordBytes + nameOffset, name);
+            nameOffset += name.length;
+        }
+        return buf;
+    }
+
+    private static PlayerProfile[] decode(ByteBuffer segment, int count) {
+        segment.order(ByteOrder.BIG_ENDIAN);
+        int table = count * PlayerProfile.RECORD_BYTES;
+        byte[] names = new byte[segment.capacity() - table];
+        segment.get(table, names);
+        PlayerProfile[] profiles = new PlayerProfile[count];
+        for (int i = 0; i < count; i++) {
+            int at = i * PlayerProfile.RECORD_BYTES;
+            String name = new String(names, segment.getInt(at), segment.getShort(at + 4), StandardCharsets.UTF_8);
+            profiles[i] = PlayerProfile.readRecord(segment, at, name);
+        }
+        return profiles;
+    }
+
+    private static boolean isSerialized(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return Files.size(path) >= 4 && in.readInt() == SERIALIZED_MAGIC;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, PlayerProfile> readSerialized(Path path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return new ConcurrentHashMap<>((Map<String, PlayerProfile>) in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int crc(ByteBuffer buf) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Player snapshot is truncated.");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package connectfour;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Where a {@link PlayerManager} keeps its player profiles.
+ * <p>
+ * {@link MemoryPlayerStore} holds every profile on the heap and persists
+ * them as a snapshot plus journal. {@link PagedPlayerStore} keeps them in
+ * memory-mapped files and only materializes the ones in use, for player
+ * bases too large for the heap.
+ * </p>
+ * <p>
+ * A store hands out at most one profile object per player at a time, so
+ * changes made through it are never lost to a stale copy. Callers that
+ * change a profile report it with {@link #changed(PlayerProfile)}; ratings
+ * changed by tournament threads are reported with
+ * {@link #ratingChanged(Rating)}, which must be safe to call from any
+ * thread.
+ * </p>
+ */
+public interface PlayerStore {
+
+    /**
+     * Read the store from disk. Profiles obtained before must not be used
+     * afterwards.
+     *
+     * @throws IOException when the data cannot be read
+     */
+    void load() throws IOException;
+
+    /**
+     * @param name player name
+     * @return the player's profile, or null when there is no such player
+     */
+    PlayerProfile get(String name);
+
+    /**
+     * Add a new player.
+     *
+     * @param name player name
+     * @return the new profile, or null when the player already exists
+     */
+    PlayerProfile register(String name);
+
+    /**
+     * Add or replace a profile, for bulk imports.
+     *
+     * @param profile profile to store
+     */
+    void put(PlayerProfile profile);
+
+    /**
+     * Note that a profile obtained from this store was changed.
+     *
+     * @param profile the changed profile
+     */
+    void changed(PlayerProfile profile);
+
+    /**
+     * Note that the rating of a stored player was changed, possibly on
+     * another thread.
+     *
+     * @param rating the changed rating; {@code rating.player} names its
+     *               owner
+     */
+    void ratingChanged(Rating rating);
+
+    /**
+     * Keep a profile in memory until another one is pinned, as for the
+     * logged-in player.
+     *
+     * @param profile profile to keep, or null for none
+     */
+    void setPinned(PlayerProfile profile);
+
+    /**
+     * @return number of players
+     */
+    long size();
+
+    /**
+     * Visit every player. A paged store reads them from disk a batch at a
+     * time without keeping them, so the profiles visited may be copies and
+     * are only to be read.
+     *
+     * @param action called for each profile
+     */
+    void forEach(Consumer<PlayerProfile> action);
+
+    /**
+     * Visit the players currently held in memory.
+     *
+     * @param action called for each profile
+     */
+    void forEachLoaded(Consumer<PlayerProfile> action);
+
+    /**
+     * Write out every change so far. Without {@code sync} the data may
+     * still sit in the operating system's cache, where it survives the
+     * program but not a power cut.
+     *
+     * @param sync whether to force the data to the device as well
+     * @throws IOException when writing fails
+     */
+    void save(boolean sync) throws IOException;
+
+    /**
+     * Save, then rewrite the stored data compactly, if the store has
+     * anything to compact, and wait for it.
+     *
+     * @throws IOException when writing fails
+     */
+    void compact() throws IOException;
+
+    /**
+     * Close the files. Nothing may be stored until the next
+     * {@link #load()}.
+     *
+     * @throws IOException when closing fails
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,289 @@
+package connectfour;
+
+import java.io.IOException;
+
+/**
+ * Saves a {@link PlayerStore} on a background thread, so a finished game
+ * never waits for the disk.
+ * <p>
+ * Callers report changes with {@link #changed()} and return at once. The
+ * writer saves once the oldest unsaved change is older than the flush
+ * interval, or once the batch size is reached, whichever comes first.
+ * Changes coalesce in between: the store writes each changed player once
+ * per save, however often the player changed.
+ * </p>
+ * <p>
+ * The sync policy decides how often saved data is forced to the device,
+ * in the manner of an append-only log: after every save, at most once a
+ * second, or never, leaving it to the operating system. Data that was
+ * saved but not forced survives the program crashing, not the machine.
+ * {@link #flush()} and {@link #close()} always force, and report whether
+ * the save succeeded.
+ * </p>
+ */
+public class PlayerWriter {
+    public static final long DEFAULT_INTERVAL_MILLIS = 200;
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    private static final long SYNC_MILLIS = 1000;
+
+    /**
+     * How often saved data is forced to the device.
+     */
+    public enum Sync {
+        /** After every save. */
+        ALWAYS("always"),
+        /** At most once a second. */
+        EVERY_SECOND("second"),
+        /** Only on flush and close. */
+        NEVER("never");
+
+        private final String key;
+
+        Sync(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the word naming the policy in commands
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @param key word naming a policy
+         * @return the policy, or null for an unknown word
+         */
+        public static Sync parse(String key) {
+            for (Sync sync : values()) {
+                if (sync.key.equalsIgnoreCase(key))
+                    return sync;
+            }
+            return null;
+        }
+    }
+
+    private final PlayerStore store;
+    private final Thread thread;
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Sync sync = Sync.ALWAYS;
+
+    private int pending; // changes since the last save
+    private long dueAt; // when the oldest of them has to be saved
+    private boolean unsynced; // saved data not forced yet
+    private long lastSync;
+    private long requested; // flushes asked for
+    private long done; // flushes finished
+    private long failed; // flushes whose save failed
+    private boolean closing;
+
+    /**
+     * Create a writer and start its thread.
+     *
+     * @param store store to save
+     */
+    public PlayerWriter(PlayerStore store) {
+        this.store = store;
+        this.lastSync = System.currentTimeMillis();
+        this.thread = new Thread(this::run, "PlayerWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Set how long a change may wait before it is saved.
+     *
+     * @param intervalMillis milliseconds; 0 saves every change at once
+     */
+    public synchronized void setInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Flush interval must not be negative.");
+        }
+        this.intervalMillis = intervalMillis;
+        if (pending > 0)
+            dueAt = Math.min(dueAt, System.currentTimeMillis() + intervalMillis);
+        notifyAll();
+    }
+
+    public synchronized long getInterval() {
+        return intervalMillis;
+    }
+
+    /**
+     * Set how many changes make the writer save before the interval is
+     * over.
+     *
+     * @param batchSize number of changes, at least 1
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+        notifyAll();
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param sync how often saved data is forced to the device
+     */
+    public synchronized void setSync(Sync sync) {
+        this.sync = sync;
+        notifyAll();
+    }
+
+    public synchronized Sync getSync() {
+        return sync;
+    }
+
+    /**
+     * Note that the store has changes to save. Returns at once.
+     */
+    public synchronized void changed() {
+        if (pending++ == 0)
+            dueAt = System.currentTimeMillis() + intervalMillis;
+        notifyAll();
+    }
+
+    /**
+     * Save and force everything changed so far, and wait for it. Runs on
+     * the calling thread once the writer is closed. After a failed save the
+     * writer keeps retrying in the background.
+     *
+     * @return false when the save failed
+     */
+    public boolean flush() {
+        boolean interrupted = false;
+        synchronized (this) {
+            if (thread.isAlive()) {
+                long ticket = ++requested;
+                notifyAll();
+                while (done < ticket && failed < ticket && thread.isAlive()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // finish waiting, so nothing is lost
+                    }
+                }
+                if (done >= ticket || failed >= ticket) {
+                    if (interrupted)
+                        Thread.currentThread().interrupt();
+                    return done >= ticket;
+                }
+            }
+        }
+        boolean saved = save(true);
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return saved;
+    }
+
+    /**
+     * Flush and stop the thread. Calling it again only flushes.
+     *
+     * @return false when the final save failed, so changes were lost
+     */
+    public boolean close() {
+        boolean saved = flush();
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return saved;
+    }
+
+    /**
+     * Explanation of the writer loop:
+     *
+     * - The thread sleeps until a flush is asked for, the batch is full,
+     * the oldest change is due, or, with the once-a-second policy, saved
+     * data has gone unforced for a second.
+     *
+     * - It takes the pending count and saves outside the lock, so changes
+     * keep coming in while the disk is busy; they make up the next batch.
+     *
+     * - A failed save is retried one interval (at least a second) later.
+     * The store still holds the changes, so none are lost as long as the
+     * program runs. Flushes waiting on the failed save are told so at once
+     * instead of being counted as done.
+     */
+    private void run() {
+        while (true) {
+            long ticket;
+            boolean force;
+            synchronized (this) {
+                try {
+                    while (!due()) {
+                        if (closing)
+                            return;
+                        wait(sleepMillis());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ticket = requested;
+                long now = System.currentTimeMillis();
+                force = ticket > done || sync == Sync.ALWAYS
+                        || (sync == Sync.EVERY_SECOND && now - lastSync >= SYNC_MILLIS);
+                pending = 0;
+            }
+            boolean saved = save(force);
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (!saved) {
+                    if (pending++ == 0)
+                        dueAt = now + Math.max(intervalMillis, SYNC_MILLIS);
+                    failed = Math.max(failed, ticket);
+                } else {
+                    if (force) {
+                        unsynced = false;
+                        lastSync = now;
+                    } else if (sync == Sync.EVERY_SECOND) {
+                        unsynced = true;
+                    }
+                    done = ticket;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean due() {
+        long now = System.currentTimeMillis();
+        return requested > Math.max(done, failed) || (pending > 0 && (pending >= batchSize || now >= dueAt))
+                || (unsynced && sync == Sync.EVERY_SECOND && now - lastSync >= SYNC_MILLIS);
+    }
+
+    /**
+     * @return how long to wait for the next thing to become due; 0 waits
+     *         until notified
+     */
+    private long sleepMillis() {
+        long now = System.currentTimeMillis();
+        long wake = Long.MAX_VALUE;
+        if (pending > 0)
+            wake = dueAt;
+        if (unsynced && sync == Sync.EVERY_SECOND)
+            wake = Math.min(wake, lastSync + SYNC_MILLIS);
+        return (wake == Long.MAX_VALUE) ? 0 : Math.max(1, wake - now);
+    }
+
+    private boolean save(boolean force) {
+        try {
+            store.save(force);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to save player data.");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package connectfour;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Searches a {@link HardAI}'s answers to the human's likely moves while the
+ * human is still thinking.
+ * <p>
+ * {@link #start(Board, char, char)} launches one background daemon thread
+ * that plays each legal human move on its own copy of the board, starting
+ * with the reply the AI's last search predicted and then center-first, and
+ * runs a normal AI search on the resulting position. Finished searches are
+ * kept by position key. When the human has moved, {@link #take(Board)}
+ * returns the kept answer for that position, waits for it if that position
+ * is the one being searched, and otherwise cancels pondering so the caller
+ * can search normally. Either way the searches also leave their results in
+ * the AI's transposition table.
+ * </p>
+ * <p>
+ * The AI must not be used by anyone else while pondering runs; every
+ * method here that returns control to the caller has stopped the
+ * background thread first.
+ * </p>
+ */
+public class Ponderer {
+    private final HardAI ai;
+    private final Map<Long, Answer> results = new HashMap<>(); // by position key
+    private Thread thread;
+    private volatile boolean cancelled;
+    private boolean searching; // guarded by this
+    private long searchingKey; // guarded by this
+    private int lastDepth;
+    private SearchStats lastStats;
+
+    /**
+     * A finished search: the move, its depth and the search's statistics,
+     * if the AI collects them.
+     */
+    private record Answer(int move, int depth, SearchStats stats) {
+    }
+
+    /**
+     * Create a ponderer for the given AI.
+     *
+     * @param ai AI whose replies are searched in advance
+     */
+    public Ponderer(HardAI ai) {
+        this.ai = ai;
+    }
+
+    /**
+     * Start searching the AI's answers to every human move from the given
+     * position. Any pondering still running is cancelled first.
+     *
+     * @param board      position with the human to move; it is copied
+     * @param aiToken    token of the AI
+     * @param humanToken token of the human
+     */
+    public void start(Board board, char aiToken, char humanToken) {
+        cancel();
+        synchronized (this) {
+            results.clear();
+        }
+        Board copy = new Board(board);
+        cancelled = false;
+        thread = new Thread(() -> ponder(copy, aiToken, humanToken), "Ponderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Finish pondering after the human has moved.
+     *
+     * @param board position after the human's move
+     * @return the AI's pondered move for that position, or -1 when it was
+     *         not searched and the caller has to search it now
+     */
+    public int take(Board board) {
+        long key = board.getKey();
+        Answer result;
+        synchronized (this) {
+            while (searching && searchingKey == key) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            result = results.get(key);
+        }
+        cancel();
+        if (result == null) {
+            return -1;
+        }
+        lastDepth = result.depth();
+        lastStats = result.stats();
+        return result.move();
+    }
+
+    /**
+     * Stop pondering and wait for the background thread to finish. Does
+     * nothing when pondering is not running.
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            ai.stop();
+            try {
+                t.join(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Returns the depth the move returned by the last successful
+     * {@link #take(Board)} was searched to.
+     *
+     * @return completed depth in plies
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Returns the search statistics of the move returned by the last
+     * successful {@link #take(Board)}.
+     *
+     * @return statistics, or null when the AI did not collect them
+     */
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    private void ponder(Board board, char aiToken, char humanToken) {
+        int predicted = ai.expectedReply(board, humanToken);
+        int[] order = HardAI.centerFirstOrder(board.getCols());
+        for (int i = -1; i < order.length && !cancelled; i++) {
+            int col = (i < 0) ? predicted : order[i];
+            if (col < 0 || (i >= 0 && col == predicted) || board.isColumnFull(col))
+                continue;
+
+            int row = board.drop(col, humanToken);
+            if (!board.isWinningMove(row, col) && !board.isFull()) {
+                long key = board.getKey();
+                synchronized (this) {
+                    searching = true;
+                    searchingKey = key;
+                }
+                int move = ai.chooseMove(board, aiToken, humanToken);
+                synchronized (this) {
+                    // a cancelled search stopped early, so its move is not kept
+                    if (!cancelled) {
+                        results.put(key, new Answer(move, ai.getLastDepth(), ai.getLastStats()));
+                    }
+                    searching = false;
+                    notifyAll();
+                }
+            }
+            board.undo(row, col);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package connectfour;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A player's Glicko-2 rating: the rating itself, its deviation (how
+ * uncertain it is) and its volatility (how much it is expected to swing).
+ * <p>
+ * New players start at 1500 with a deviation of 350. The values are only
+ * changed by a {@link RatingSystem}, which also keeps the sums of games
+ * played in a rating period that has not been closed yet. A fixed rating
+ * stands for an opponent whose strength is known, such as an AI level,
+ * and never changes.
+ * </p>
+ */
+public class Rating implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final double INITIAL_RATING = 1500;
+    public static final double INITIAL_DEVIATION = 350;
+    public static final double INITIAL_VOLATILITY = 0.06;
+
+    volatile double rating;
+    volatile double deviation;
+    volatile double volatility;
+    volatile int games;
+    final boolean fixed;
+
+    // Sums over the games of the open rating period, on the Glicko-2 scale
+    double pendingVariance; // sum of g^2 E (1 - E); its inverse is the v of the paper
+    double pendingImprovement; // sum of g (s - E)
+    int pendingGames;
+
+    transient String player; // name of the profile holding this rating, if any
+    transient boolean queued; // waiting in a rating system for its period to close
+
+    /**
+     * Create the rating of a new player.
+     */
+    public Rating() {
+        this(INITIAL_RATING, INITIAL_DEVIATION, false);
+    }
+
+    private Rating(double rating, double deviation, boolean fixed) {
+        this.rating = rating;
+        this.deviation = deviation;
+        this.volatility = INITIAL_VOLATILITY;
+        this.fixed = fixed;
+    }
+
+    /**
+     * Create a rating that games do not change.
+     *
+     * @param rating    rating
+     * @param deviation rating deviation
+     * @return the fixed rating
+     */
+    public static Rating fixed(double rating, double deviation) {
+        return new Rating(rating, deviation, true);
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    public double getDeviation() {
+        return deviation;
+    }
+
+    public double getVolatility() {
+        return volatility;
+    }
+
+    /**
+     * @return games rated so far, not counting the open period
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * @return games played in the open rating period
+     */
+    public int getPendingGames() {
+        return pendingGames;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    /**
+     * Write every field but the owner, for the player journal.
+     *
+     * @param out destination
+     * @throws IOException when writing fails
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(rating);
+        out.writeDouble(deviation);
+        out.writeDouble(volatility);
+        out.writeInt(games);
+        out.writeDouble(pendingVariance);
+        out.writeDouble(pendingImprovement);
+        out.writeInt(pendingGames);
+    }
+
+    /**
+     * Rebuild a rating from its stored fields.
+     */
+    static Rating restore(double rating, double deviation, double volatility, int games, double pendingVariance,
+            double pendingImprovement, int pendingGames) {
+        Rating r = new Rating(rating, deviation, false);
+        r.volatility = volatility;
+        r.games = games;
+        r.pendingVariance = pendingVariance;
+        r.pendingImprovement = pendingImprovement;
+        r.pendingGames = pendingGames;
+        return r;
+    }
+
+    /**
+     * Read a rating written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in source
+     * @return the rating
+     * @throws IOException when reading fails
+     */
+    static Rating readFrom(DataInput in) throws IOException {
+        return restore(in.readDouble(), in.readDouble(), in.readDouble(), in.readInt(), in.readDouble(),
+                in.readDouble(), in.readInt());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f (RD %.0f)", rating, deviation);
+    }
+}
@@ -0,0 +1,275 @@
+package connectfour;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Updates {@link Rating}s from game results with the Glicko-2 system.
+ * <p>
+ * By default every game is a rating period of its own, so both players'
+ * ratings move as soon as the result comes in. In batch mode results are
+ * only summed up, and {@link #closePeriod()} rates everyone who played at
+ * once, each against opponents' ratings as they stood when the period
+ * opened. This is the way Glicko-2 is meant to be run for events such as a
+ * tournament round. Either way a game costs O(1).
+ * </p>
+ * <p>
+ * All methods lock the system, so results may come from several match
+ * threads at once. An update takes a microsecond or so, far less than
+ * playing the game.
+ * </p>
+ */
+public class RatingSystem {
+    private static final double SCALE = 173.7178; // Glicko rating points per Glicko-2 unit
+    private static final double DEFAULT_TAU = 0.5;
+    private static final double EPSILON = 1e-6;
+
+    private final double tau;
+    private final List<Rating> pending = new ArrayList<>();
+    private boolean batch;
+    private Consumer<Rating> listener;
+
+    public RatingSystem() {
+        this(DEFAULT_TAU);
+    }
+
+    /**
+     * Create a rating system.
+     *
+     * @param tau how much volatility may change per period; 0.3 to 1.2 is
+     *            sensible, smaller values keep ratings steadier
+     */
+    public RatingSystem(double tau) {
+        if (tau <= 0) {
+            throw new IllegalArgumentException("Tau must be positive.");
+        }
+        this.tau = tau;
+    }
+
+    /**
+     * Returns the fixed rating used for an AI level. The values are rough
+     * estimates from play against each other; they anchor the scale so that
+     * beating an AI means the same from one player to the next.
+     *
+     * @param level AI level name as given to 'game start ai'
+     * @return fixed rating, or null for an unknown level
+     */
+    public static Rating aiRating(String level) {
+        switch (level.toLowerCase()) {
+            case "easy":
+                return Rating.fixed(900, 50);
+            case "med":
+                return Rating.fixed(1300, 50);
+            case "mcts":
+                return Rating.fixed(1700, 50);
+            case "hard":
+                return Rating.fixed(1900, 50);
+            case "perfect":
+                return Rating.fixed(2400, 50);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Choose between rating every game at once and rating in periods.
+     * Switching batch mode off closes the open period.
+     *
+     * @param batch whether results wait for {@link #closePeriod()}
+     */
+    public synchronized void setBatch(boolean batch) {
+        if (this.batch && !batch) {
+            closePeriod();
+        }
+        this.batch = batch;
+    }
+
+    public synchronized boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Set a callback told about every rating that changes, including the
+     * sums of an open period. It runs with the system locked, so it must be
+     * quick and must not call back into the system.
+     *
+     * @param listener callback, or null for none
+     */
+    public synchronized void setListener(Consumer<Rating> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Rate a game.
+     *
+     * @param a      first player
+     * @param b      second player
+     * @param scoreA 1 if the first player won, 0.5 for a draw, 0 if the
+     *               second player won
+     */
+    public synchronized void record(Rating a, Rating b, double scoreA) {
+        if (scoreA < 0 || scoreA > 1) {
+            throw new IllegalArgumentException("Score must be between 0 and 1.");
+        }
+        // both sides are computed from the ratings before the game
+        accumulate(a, b, scoreA);
+        accumulate(b, a, 1 - scoreA);
+        if (!batch) {
+            update(a);
+            update(b);
+        }
+    }
+
+    /**
+     * Rate everyone who played since the last period closed.
+     *
+     * @return number of players whose rating changed
+     */
+    public synchronized int closePeriod() {
+        int count = pending.size();
+        for (Rating r : pending) {
+            r.queued = false;
+            update(r);
+        }
+        pending.clear();
+        return count;
+    }
+
+    /**
+     * @return number of players with games in the open period
+     */
+    public synchronized int getPendingPlayers() {
+        return pending.size();
+    }
+
+    /**
+     * Take over a rating whose open period was saved: in batch mode the next
+     * {@link #closePeriod()} rates it, otherwise it is rated at once. Taking
+     * over the same rating again does nothing.
+     *
+     * @param r rating loaded from disk
+     */
+    public synchronized void resume(Rating r) {
+        if (r.pendingGames == 0 || r.fixed)
+            return;
+        if (batch) {
+            enqueue(r);
+        } else {
+            update(r);
+        }
+    }
+
+    private void accumulate(Rating p, Rating opponent, double score) {
+        if (p.fixed)
+            return;
+        double mu = (p.rating - Rating.INITIAL_RATING) / SCALE;
+        double muJ = (opponent.rating - Rating.INITIAL_RATING) / SCALE;
+        double g = g(opponent.deviation / SCALE);
+        double e = 1 / (1 + Math.exp(-g * (mu - muJ)));
+        p.pendingVariance += g * g * e * (1 - e);
+        p.pendingImprovement += g * (score - e);
+        p.pendingGames++;
+        if (batch) {
+            enqueue(p);
+        }
+        if (listener != null)
+            listener.accept(p);
+    }
+
+    private void enqueue(Rating p) {
+        if (!p.queued) {
+            p.queued = true;
+            pending.add(p);
+        }
+    }
+
+    /**
+     * Explanation of the update (steps 3 to 8 of Glickman's Glicko-2
+     * paper):
+     *
+     * - Ratings are moved to the Glicko-2 scale, mu = (r - 1500) / 173.7178
+     * and phi = RD / 173.7178.
+     *
+     * - v, the variance of the rating judged from the period's games alone,
+     * is the inverse of the summed g^2 E (1 - E). delta, the improvement
+     * those games show, is v times the summed g (s - E). Both sums were
+     * built one game at a time by accumulate().
+     *
+     * - The new volatility solves f(x) = 0 by the Illinois method, which
+     * usually converges in a handful of steps.
+     *
+     * - The deviation first grows by the new volatility, then shrinks by
+     * what the games revealed. The rating moves by phi'^2 times the summed
+     * g (s - E).
+     *
+     * - The deviation is capped at its starting value, so erratic results
+     * never make a player more uncertain than a newcomer. Periods a player
+     * sits out are not counted, so their deviation only grows through the
+     * games they play.
+     */
+    private void update(Rating p) {
+        if (p.fixed || p.pendingGames == 0)
+            return;
+        double mu = (p.rating - Rating.INITIAL_RATING) / SCALE;
+        double phi = p.deviation / SCALE;
+        double v = 1 / p.pendingVariance;
+        double delta = v * p.pendingImprovement;
+
+        double sigma = newVolatility(phi, p.volatility, v, delta);
+        double phiStar = Math.sqrt(phi * phi + sigma * sigma);
+        double newPhi = 1 / Math.sqrt(1 / (phiStar * phiStar) + 1 / v);
+        double newMu = mu + newPhi * newPhi * p.pendingImprovement;
+
+        p.volatility = sigma;
+        p.deviation = Math.min(newPhi * SCALE, Rating.INITIAL_DEVIATION);
+        p.rating = Rating.INITIAL_RATING + newMu * SCALE;
+        p.games += p.pendingGames;
+        p.pendingVariance = 0;
+        p.pendingImprovement = 0;
+        p.pendingGames = 0;
+        if (listener != null)
+            listener.accept(p);
+    }
+
+    private double newVolatility(double phi, double sigma, double v, double delta) {
+        double a = Math.log(sigma * sigma);
+        double phi2 = phi * phi;
+        double xB;
+        double xA = a;
+        if (delta * delta > phi2 + v) {
+            xB = Math.log(delta * delta - phi2 - v);
+        } else {
+            int k = 1;
+            while (f(a - k * tau, a, phi2, v, delta) < 0) {
+                k++;
+            }
+            xB = a - k * tau;
+        }
+        double fA = f(xA, a, phi2, v, delta);
+        double fB = f(xB, a, phi2, v, delta);
+        while (Math.abs(xB - xA) > EPSILON) {
+            double c = xA + (xA - xB) * fA / (fB - fA);
+            double fC = f(c, a, phi2, v, delta);
+            if (fC * fB <= 0) {
+                xA = xB;
+                fA = fB;
+            } else {
+                fA /= 2;
+            }
+            xB = c;
+            fB = fC;
+        }
+        return Math.exp(xA / 2);
+    }
+
+    private double f(double x, double a, double phi2, double v, double delta) {
+        double ex = Math.exp(x);
+        double d = phi2 + v + ex;
+        return ex * (delta * delta - phi2 - v - ex) / (2 * d * d) - (x - a) / (tau * tau);
+    }
+
+    private static double g(double phi) {
+        return 1 / Math.sqrt(1 + 3 * phi * phi / (Math.PI * Math.PI));
+    }
+}
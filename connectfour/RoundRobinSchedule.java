@@ -0,0 +1,209 @@
+package connectfour;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Round-robin pairings generated one match at a time.
+ * <p>
+ * Every player meets every other player exactly once. The matches come
+ * round by round, and nobody plays twice in a round. With an odd number of
+ * players one player sits out each round. Nothing is built up front: the
+ * schedule only holds the player list and its position, so it takes
+ * O(players) memory however many matches it yields. The position can be
+ * saved as a {@link Checkpoint} and the schedule later resumed from it.
+ * </p>
+ * <p>
+ * Pairings do not depend on results, so as a {@link TournamentFormat} the
+ * schedule hands out matches without waiting and ignores the results.
+ * </p>
+ */
+public class RoundRobinSchedule implements Iterator<Match>, TournamentFormat {
+    private final List<String> players;
+    private final int slots; // players rounded up to even; slot == players.size() is the bye
+    private int round;
+    private int pair;
+    private long produced;
+
+    /**
+     * Position in a schedule: the next match to produce is pair
+     * {@code pair} of round {@code round}, both counted from 0.
+     *
+     * @param round round number
+     * @param pair  pair number within the round, byes included
+     */
+    public record Checkpoint(int round, int pair) {
+    }
+
+    /**
+     * Create a schedule starting from the first round.
+     *
+     * @param players players in seeding order; the list is not copied and
+     *                must not change while the schedule is in use
+     */
+    public RoundRobinSchedule(List<String> players) {
+        this(players, new Checkpoint(0, 0));
+    }
+
+    /**
+     * Create a schedule resumed from a checkpoint of a schedule for the same
+     * players.
+     *
+     * @param players players in the same order as when the checkpoint was
+     *                taken
+     * @param from    position to resume at
+     */
+    public RoundRobinSchedule(List<String> players, Checkpoint from) {
+        this.players = players;
+        this.slots = players.size() + (players.size() % 2);
+        int rounds = Math.max(0, slots - 1);
+        if (from.round() < 0 || from.pair() < 0 || from.pair() >= Math.max(1, slots / 2)
+                || from.round() > rounds || (from.round() == rounds && from.pair() != 0)) {
+            throw new IllegalArgumentException("Checkpoint " + from + " is outside the schedule.");
+        }
+        this.round = from.round();
+        this.pair = from.pair();
+        this.produced = countBefore(round, pair);
+        skipByes();
+    }
+
+    /**
+     * @return number of rounds
+     */
+    public int getRounds() {
+        return Math.max(0, slots - 1);
+    }
+
+    /**
+     * @return number of matches in the whole schedule, n(n-1)/2
+     */
+    public long getTotalMatches() {
+        long n = players.size();
+        return n * (n - 1) / 2;
+    }
+
+    /**
+     * @return number of matches not produced yet
+     */
+    public long getRemainingMatches() {
+        return getTotalMatches() - produced;
+    }
+
+    /**
+     * @return position of the next match, to resume from later
+     */
+    public Checkpoint getCheckpoint() {
+        return new Checkpoint(round, pair);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return round < getRounds();
+    }
+
+    @Override
+    public Match next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int a = slotPlayer(round, pair);
+        int b = slotPlayer(round, slots - 1 - pair);
+        boolean swap = pair == 0 && round % 2 == 1; // player 0 alternates who moves first
+        Match match = swap ? new Match(players.get(b), players.get(a)) : new Match(players.get(a), players.get(b));
+        produced++;
+        advance();
+        skipByes();
+        return match;
+    }
+
+    @Override
+    public Match nextMatch() {
+        return hasNext() ? next() : null;
+    }
+
+    @Override
+    public void recordResult(String winner, String loser) {
+    }
+
+    @Override
+    public boolean isFinished() {
+        return !hasNext();
+    }
+
+    @Override
+    public long remainingMatches() {
+        return getRemainingMatches();
+    }
+
+    @Override
+    public String describe() {
+        return "round robin, " + getRounds() + " rounds";
+    }
+
+    /**
+     * Returns the remaining matches as a sequential stream that advances
+     * this schedule as it is consumed.
+     *
+     * @return stream of the remaining matches
+     */
+    public Stream<Match> stream() {
+        Spliterator<Match> split = Spliterators.spliterator(this, getRemainingMatches(),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED);
+        return StreamSupport.stream(split, false);
+    }
+
+    /**
+     * Explanation of the pairing (the circle method):
+     *
+     * - Lay out the players in slots 0 to m-1, with m even (an odd field
+     * gets an extra bye slot). Round r pairs slot i with slot m-1-i.
+     *
+     * - Slot 0 always holds player 0. Every other slot holds player
+     * 1 + (slot - 1 + r) mod (m - 1), so between rounds everyone but
+     * player 0 moves one place around the circle. Over m-1 rounds every two
+     * players face each other exactly once.
+     *
+     * - A pairing that involves the bye slot is skipped. Each player's
+     * opponent in a round is therefore computed in O(1) from the round and
+     * slot alone.
+     */
+    private int slotPlayer(int round, int slot) {
+        return (slot == 0) ? 0 : 1 + (slot - 1 + round) % (slots - 1);
+    }
+
+    private void advance() {
+        pair++;
+        if (pair == slots / 2) {
+            pair = 0;
+            round++;
+        }
+    }
+
+    private void skipByes() {
+        int bye = players.size();
+        while (hasNext() && (slotPlayer(round, pair) == bye || slotPlayer(round, slots - 1 - pair) == bye)) {
+            advance();
+        }
+    }
+
+    /**
+     * Returns how many real matches come before the given position.
+     */
+    private long countBefore(int round, int pair) {
+        int perRound = players.size() / 2;
+        long count = (long) round * perRound;
+        if (round < getRounds()) {
+            int bye = players.size();
+            for (int i = 0; i < pair; i++) {
+                if (slotPlayer(round, i) != bye && slotPlayer(round, slots - 1 - i) != bye)
+                    count++;
+            }
+        }
+        return count;
+    }
+}
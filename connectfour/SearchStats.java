@@ -0,0 +1,222 @@
+package connectfour;
+
+/**
+ * Counters describing one {@link HardAI} search: how many positions it
+ * visited and how fast, how deep it got, how well its move ordering and
+ * transposition table worked and when it settled on the move it played.
+ * <p>
+ * Each search thread fills its own instance without locking, and the
+ * instances are summed into one when the search returns. Collection is
+ * switched on with {@link HardAI#setStatsEnabled(boolean)}; when it is off
+ * the search never creates or touches an instance.
+ * </p>
+ */
+public class SearchStats {
+    long nodes;
+    long elapsedNanos;
+    long bestMoveNanos;
+    int completedDepth;
+    int maxPly;
+    int threads = 1;
+    long tableProbes;
+    long tableHits; // probes that found an entry for the position
+    long tableCutoffs; // probes whose entry decided the node on its own
+    final long[] expanded; // by ply: nodes whose moves were searched
+    final long[] cutoffs; // by ply: nodes that stopped early on a beta cutoff
+    final long[] firstMoveCutoffs; // by ply: cutoffs on the first move tried
+    final long[] iterationNodes; // by depth: nodes spent on that iteration
+
+    /**
+     * Create empty counters for a search of at most the given depth.
+     *
+     * @param maxDepth deepest iteration the search may run
+     */
+    SearchStats(int maxDepth) {
+        expanded = new long[maxDepth + 1];
+        cutoffs = new long[maxDepth + 1];
+        firstMoveCutoffs = new long[maxDepth + 1];
+        iterationNodes = new long[maxDepth + 1];
+    }
+
+    /**
+     * Count a node whose moves are about to be searched.
+     *
+     * @param ply distance of the node from the root
+     */
+    void expand(int ply) {
+        expanded[ply]++;
+        if (ply + 1 > maxPly)
+            maxPly = ply + 1;
+    }
+
+    /**
+     * Count a transposition table probe.
+     *
+     * @param hit whether the table held an entry for the position
+     */
+    void probe(boolean hit) {
+        tableProbes++;
+        if (hit)
+            tableHits++;
+    }
+
+    /**
+     * Count a beta cutoff.
+     *
+     * @param ply   distance of the node from the root
+     * @param first whether the first move tried caused it
+     */
+    void cutoff(int ply, boolean first) {
+        cutoffs[ply]++;
+        if (first)
+            firstMoveCutoffs[ply]++;
+    }
+
+    /**
+     * Add another thread's counters to these. Depths and times are taken as
+     * the larger of the two.
+     *
+     * @param other counters of the same search on another thread
+     */
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        elapsedNanos = Math.max(elapsedNanos, other.elapsedNanos);
+        maxPly = Math.max(maxPly, other.maxPly);
+        threads += other.threads;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        tableCutoffs += other.tableCutoffs;
+        for (int i = 0; i < expanded.length && i < other.expanded.length; i++) {
+            expanded[i] += other.expanded[i];
+            cutoffs[i] += other.cutoffs[i];
+            firstMoveCutoffs[i] += other.firstMoveCutoffs[i];
+            iterationNodes[i] += other.iterationNodes[i];
+        }
+    }
+
+    /**
+     * @return positions visited, over all threads
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return wall-clock time of the search in milliseconds
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    /**
+     * @return positions visited per wall-clock second
+     */
+    public double getNodesPerSecond() {
+        return (elapsedNanos == 0) ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return depth of the last iteration completed, i.e. how deep the move
+     *         played was searched
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return greatest distance from the root any thread searched
+     */
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    /**
+     * @return number of search threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return milliseconds from the start of the search until the iteration
+     *         that first chose the move finally played had completed
+     */
+    public double getTimeToBestMoveMillis() {
+        return bestMoveNanos / 1e6;
+    }
+
+    /**
+     * Returns the effective branching factor: how many times more nodes the
+     * last completed iteration took than the one before it.
+     *
+     * @return branching factor, or 0 when fewer than two iterations ran
+     */
+    public double getEffectiveBranchingFactor() {
+        int d = completedDepth;
+        if (d < 2 || d >= iterationNodes.length || iterationNodes[d - 1] == 0)
+            return 0;
+        return (double) iterationNodes[d] / iterationNodes[d - 1];
+    }
+
+    /**
+     * @return fraction of table probes that found an entry
+     */
+    public double getTableHitRate() {
+        return (tableProbes == 0) ? 0 : (double) tableHits / tableProbes;
+    }
+
+    /**
+     * @return fraction of table probes that settled a node without
+     *         searching it
+     */
+    public double getTableCutoffRate() {
+        return (tableProbes == 0) ? 0 : (double) tableCutoffs / tableProbes;
+    }
+
+    /**
+     * Returns the fraction of searched nodes at a ply that ended in a beta
+     * cutoff.
+     *
+     * @param ply distance from the root
+     * @return cutoff rate, 0 when no node was searched at that ply
+     */
+    public double getCutoffRate(int ply) {
+        if (ply < 0 || ply >= expanded.length || expanded[ply] == 0)
+            return 0;
+        return (double) cutoffs[ply] / expanded[ply];
+    }
+
+    /**
+     * Returns the fraction of beta cutoffs, over all plies, made by the
+     * first move tried. Close to 1 means the move ordering finds the
+     * refutation straight away.
+     *
+     * @return first-move cutoff rate
+     */
+    public double getFirstMoveCutoffRate() {
+        long all = 0;
+        long first = 0;
+        for (int i = 0; i < cutoffs.length; i++) {
+            all += cutoffs[i];
+            first += firstMoveCutoffs[i];
+        }
+        return (all == 0) ? 0 : (double) first / all;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("nodes %,d in %.1f ms (%,.0f nodes/s, %d thread%s)%n", nodes, getElapsedMillis(),
+                getNodesPerSecond(), threads, threads == 1 ? "" : "s"));
+        sb.append(String.format("depth %d, max ply %d, branching factor %.2f, best move after %.1f ms%n",
+                completedDepth, maxPly, getEffectiveBranchingFactor(), getTimeToBestMoveMillis()));
+        sb.append(String.format("table: %.1f%% hits, %.1f%% cutoffs of %,d probes%n", 100 * getTableHitRate(),
+                100 * getTableCutoffRate(), tableProbes));
+        sb.append(String.format("cutoffs: %.1f%% on the first move; by ply:", 100 * getFirstMoveCutoffRate()));
+        for (int ply = 1; ply < expanded.length; ply++) { // the root searches every move
+            if (expanded[ply] > 0)
+                sb.append(String.format(" %d:%.0f%%", ply, 100 * getCutoffRate(ply)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,481 @@
+package connectfour;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Headless engine-vs-engine runner for large batches of games.
+ * <p>
+ * Games are split over a work-stealing {@link ForkJoinPool}. Every pool
+ * thread creates its own board and its own pair of engines from the given
+ * factories the first time it plays, and reuses them for every game it
+ * runs, so engines never see two games at once. Results are streamed to an
+ * optional listener as games finish and collected in a {@link Summary}.
+ * </p>
+ * <p>
+ * Games come in pairs: both games of a pair start from the same random
+ * opening, with the engines' colours swapped, so neither engine profits
+ * from a lucky opening. Openings are derived from the seed and the pair
+ * number only, so a batch replays the same openings whatever the thread
+ * count. {@link #setOpenings(int[][])} replaces them with a fixed suite.
+ * </p>
+ */
+public class SelfPlay {
+    public static final int DEFAULT_OPENING_PLIES = 2;
+
+    private final Supplier<AIPlayer> first;
+    private final Supplier<AIPlayer> second;
+    private final int games;
+    private final int rows;
+    private final int cols;
+    private final int connect;
+    private final int threads;
+    private int openingPlies = DEFAULT_OPENING_PLIES;
+    private long seed = 1;
+    private int[][] openings;
+    private volatile boolean stopped;
+
+    /**
+     * Describe a batch of games between two engines.
+     *
+     * @param first   factory for the first engine
+     * @param second  factory for the second engine
+     * @param games   number of games to play
+     * @param rows    board rows
+     * @param cols    board columns
+     * @param connect connect length
+     * @param threads number of worker threads
+     */
+    public SelfPlay(Supplier<AIPlayer> first, Supplier<AIPlayer> second, int games, int rows, int cols,
+            int connect, int threads) {
+        if (games < 1 || threads < 1) {
+            throw new IllegalArgumentException("Game and thread counts must be at least 1.");
+        }
+        if (rows < 1 || cols < 1 || connect < 1) {
+            throw new IllegalArgumentException("Board dimensions must be positive.");
+        }
+        this.first = first;
+        this.second = second;
+        this.games = games;
+        this.rows = rows;
+        this.cols = cols;
+        this.connect = connect;
+        this.threads = threads;
+    }
+
+    /**
+     * Set how many random moves open each pair of games.
+     *
+     * @param plies opening length in plies (0 starts from the empty board)
+     */
+    public void setOpeningPlies(int plies) {
+        if (plies < 0) {
+            throw new IllegalArgumentException("Opening plies cannot be negative.");
+        }
+        this.openingPlies = plies;
+    }
+
+    /**
+     * Play fixed openings instead of random ones: pair {@code p} starts
+     * from {@code openings[p % openings.length]}, a list of columns played
+     * alternately from the empty board.
+     *
+     * @param openings opening move lists, or null for random openings
+     */
+    public void setOpenings(int[][] openings) {
+        this.openings = (openings == null || openings.length == 0) ? null : openings;
+    }
+
+    /**
+     * Ask a running batch to stop: games already being played finish and
+     * are reported, games not started yet are skipped. Safe to call from a
+     * listener.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Set the seed the random openings are derived from.
+     *
+     * @param seed opening seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Result of one game.
+     *
+     * @param game        game number, from 0
+     * @param outcome     1 when the first engine won, -1 when the second
+     *                    won, 0 for a draw
+     * @param firstIsX    whether the first engine played X (moved first)
+     * @param moves       plies played, including the opening
+     * @param firstNanos  time the first engine spent choosing moves
+     * @param firstMoves  moves chosen by the first engine
+     * @param secondNanos time the second engine spent choosing moves
+     * @param secondMoves moves chosen by the second engine
+     */
+    public record GameResult(int game, int outcome, boolean firstIsX, int moves, long firstNanos,
+            int firstMoves, long secondNanos, int secondMoves) {
+    }
+
+    /**
+     * Running totals of a batch. Safe to update from several threads.
+     */
+    public static class Summary {
+        private int games;
+        private int firstWins;
+        private int draws;
+        private int secondWins;
+        private long moves;
+        private long firstNanos;
+        private long firstMoves;
+        private long secondNanos;
+        private long secondMoves;
+        private final long startNanos = System.nanoTime();
+        private long endNanos;
+
+        synchronized void add(GameResult r) {
+            games++;
+            if (r.outcome() > 0)
+                firstWins++;
+            else if (r.outcome() < 0)
+                secondWins++;
+            else
+                draws++;
+            moves += r.moves();
+            firstNanos += r.firstNanos();
+            firstMoves += r.firstMoves();
+            secondNanos += r.secondNanos();
+            secondMoves += r.secondMoves();
+        }
+
+        synchronized void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public synchronized int getGames() {
+            return games;
+        }
+
+        public synchronized int getFirstWins() {
+            return firstWins;
+        }
+
+        public synchronized int getDraws() {
+            return draws;
+        }
+
+        public synchronized int getSecondWins() {
+            return secondWins;
+        }
+
+        /**
+         * @return the first engine's score: wins plus half the draws, per game
+         */
+        public synchronized double getFirstScore() {
+            return (games == 0) ? 0.5 : (firstWins + 0.5 * draws) / games;
+        }
+
+        /**
+         * @return average game length in plies
+         */
+        public synchronized double getAverageMoves() {
+            return (games == 0) ? 0 : (double) moves / games;
+        }
+
+        /**
+         * @return the first engine's average time per move in milliseconds
+         */
+        public synchronized double getFirstMillisPerMove() {
+            return (firstMoves == 0) ? 0 : firstNanos / 1e6 / firstMoves;
+        }
+
+        /**
+         * @return the second engine's average time per move in milliseconds
+         */
+        public synchronized double getSecondMillisPerMove() {
+            return (secondMoves == 0) ? 0 : secondNanos / 1e6 / secondMoves;
+        }
+
+        /**
+         * @return wall-clock seconds since the batch started, up to its end
+         */
+        public synchronized double getElapsedSeconds() {
+            return ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1e9;
+        }
+
+        /**
+         * @return games finished per wall-clock second
+         */
+        public synchronized double getGamesPerSecond() {
+            double seconds = getElapsedSeconds();
+            return (seconds == 0) ? 0 : games / seconds;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d games: first %d wins, %d draws, second %d wins (first scores %.1f%%)%n"
+                    + "avg %.1f plies/game, first %.3f ms/move, second %.3f ms/move%n"
+                    + "%.1f s, %.1f games/s",
+                    games, firstWins, draws, secondWins, 100 * getFirstScore(),
+                    getAverageMoves(), getFirstMillisPerMove(), getSecondMillisPerMove(),
+                    getElapsedSeconds(), getGamesPerSecond());
+        }
+    }
+
+    /**
+     * Play the batch.
+     *
+     * @param listener called with each result as its game finishes, from
+     *                 the worker thread that played it; may be null
+     * @return totals for the whole batch
+     */
+    public Summary run(Consumer<GameResult> listener) {
+        stopped = false;
+        Summary summary = new Summary();
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Batch(0, games, workers, summary, listener));
+        } finally {
+            pool.shutdown();
+        }
+        summary.finish();
+        return summary;
+    }
+
+    /**
+     * Explanation of the scheduling:
+     *
+     * - The batch is one RecursiveAction over the range of game numbers,
+     * split in halves until single games remain. Idle pool threads steal
+     * the larger unstarted halves from busy ones, so long and short games
+     * balance out without a central queue.
+     *
+     * - A Worker (board, engines, random state) lives in a ThreadLocal, so
+     * each pool thread builds it once. The hard AI's transposition table is
+     * cleared before every game, so a game's moves do not depend on which
+     * games the same thread played before it.
+     */
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<Worker> workers;
+        private final Summary summary;
+        private final Consumer<GameResult> listener;
+
+        Batch(int from, int to, ThreadLocal<Worker> workers, Summary summary, Consumer<GameResult> listener) {
+            this.from = from;
+            this.to = to;
+            this.workers = workers;
+            this.summary = summary;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped)
+                return;
+            if (to - from == 1) {
+                GameResult result = workers.get().play(from);
+                summary.add(result);
+                if (listener != null) {
+                    listener.accept(result);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Batch(from, mid, workers, summary, listener),
+                    new Batch(mid, to, workers, summary, listener));
+        }
+    }
+
+    /**
+     * One pool thread's board, engines and random state.
+     */
+    private class Worker {
+        private final Board board = new Board(rows, cols, connect);
+        private final AIPlayer firstEngine = first.get();
+        private final AIPlayer secondEngine = second.get();
+        private long rng;
+
+        GameResult play(int game) {
+            board.clear();
+            newGame(firstEngine);
+            newGame(secondEngine);
+            boolean firstIsX = (game % 2 == 0);
+            rng = seed ^ (0x9E3779B97F4A7C15L * (game / 2 + 1));
+
+            char toMove = 'X';
+            char other = 'O';
+            int moves = 0;
+            int[] opening = (openings == null) ? null : openings[(game / 2) % openings.length];
+            int plies = (opening == null) ? openingPlies : opening.length;
+            for (int i = 0; i < plies && !board.isFull(); i++) {
+                int col = (opening == null) ? openingMove(toMove) : opening[i];
+                if (col < 0 || col >= cols || board.isColumnFull(col))
+                    break;
+                board.drop(col, toMove);
+                moves++;
+                char t = toMove;
+                toMove = other;
+                other = t;
+            }
+
+            long firstNanos = 0;
+            long secondNanos = 0;
+            int firstMoves = 0;
+            int secondMoves = 0;
+            int outcome = 0;
+            while (!board.isFull()) {
+                boolean firstToMove = (toMove == 'X') == firstIsX;
+                AIPlayer engine = firstToMove ? firstEngine : secondEngine;
+                long start = System.nanoTime();
+                int col = engine.chooseMove(board, toMove, other);
+                long spent = System.nanoTime() - start;
+                if (firstToMove) {
+                    firstNanos += spent;
+                    firstMoves++;
+                } else {
+                    secondNanos += spent;
+                    secondMoves++;
+                }
+                if (col < 0 || col >= cols || board.isColumnFull(col)) {
+                    outcome = firstToMove ? -1 : 1; // an illegal move loses
+                    break;
+                }
+                int row = board.drop(col, toMove);
+                moves++;
+                if (board.isWinningMove(row, col)) {
+                    outcome = firstToMove ? 1 : -1;
+                    break;
+                }
+                char t = toMove;
+                toMove = other;
+                other = t;
+            }
+            return new GameResult(game, outcome, firstIsX, moves, firstNanos, firstMoves, secondNanos,
+                    secondMoves);
+        }
+
+        /**
+         * Pick a random column that neither is full nor ends the game.
+         *
+         * @return the column, or -1 when there is none
+         */
+        private int openingMove(char token) {
+            int start = (int) Long.remainderUnsigned(nextRandom(), cols);
+            for (int i = 0; i < cols; i++) {
+                int col = (start + i) % cols;
+                if (board.isColumnFull(col))
+                    continue;
+                int row = board.drop(col, token);
+                boolean ends = board.isWinningMove(row, col) || board.isFull();
+                board.undo(row, col);
+                if (!ends)
+                    return col;
+            }
+            return -1;
+        }
+
+        /**
+         * Start an engine on a new game with nothing cached from the last
+         * one.
+         */
+        private void newGame(AIPlayer engine) {
+            if (engine instanceof HardAI hard)
+                hard.clearTable();
+        }
+
+        private long nextRandom() {
+            // SplitMix64
+            long z = (rng += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Build an engine factory from a short description: {@code easy},
+     * {@code med}, {@code hard[:depth[:ms]]}, {@code mcts[:ms]} or
+     * {@code perfect}.
+     *
+     * @param spec engine description
+     * @return factory creating a fresh engine per call
+     * @throws IllegalArgumentException when the description is not understood
+     */
+    public static Supplier<AIPlayer> engine(String spec) {
+        String[] parts = spec.toLowerCase().split(":");
+        try {
+            switch (parts[0]) {
+                case "easy":
+                    return EasyAI::new;
+                case "med":
+                    return MediumAI::new;
+                case "hard": {
+                    int depth = (parts.length >= 2) ? Integer.parseInt(parts[1]) : HardAI.DEFAULT_DEPTH;
+                    long ms = (parts.length >= 3) ? Long.parseLong(parts[2]) : 0;
+                    return () -> new HardAI(depth, HardAI.DEFAULT_TABLE_MB, ms);
+                }
+                case "mcts": {
+                    long ms = (parts.length >= 2) ? Long.parseLong(parts[1]) : MCTSAI.DEFAULT_MOVE_MILLIS;
+                    return () -> new MCTSAI(0, ms, 1);
+                }
+                case "perfect":
+                    return SolverAI::new;
+                default:
+                    throw new IllegalArgumentException("Unknown engine: " + spec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid engine settings: " + spec);
+        }
+    }
+
+    /**
+     * Command-line runner:
+     * {@code java connectfour.SelfPlay <engineA> <engineB> <games> [threads] [rows cols connect]}.
+     *
+     * @param args engines, game count, optional thread count and board shape
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java connectfour.SelfPlay <engineA> <engineB> <games> [threads] [rows cols connect]");
+            System.out.println("Engines: easy, med, hard[:depth[:ms]], mcts[:ms], perfect");
+            return;
+        }
+        int games = Integer.parseInt(args[2]);
+        int threads = (args.length >= 4) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int rows = 6;
+        int cols = 7;
+        int connect = 4;
+        if (args.length >= 7) {
+            rows = Integer.parseInt(args[4]);
+            cols = Integer.parseInt(args[5]);
+            connect = Integer.parseInt(args[6]);
+        }
+
+        SelfPlay selfPlay = new SelfPlay(engine(args[0]), engine(args[1]), games, rows, cols, connect, threads);
+        int step = Math.max(1, games / 20);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger points = new AtomicInteger(); // first engine's score, in half points
+        long start = System.nanoTime();
+        Summary summary = selfPlay.run(result -> {
+            int p = points.addAndGet(result.outcome() + 1);
+            int n = done.incrementAndGet();
+            if (n % step == 0) {
+                System.out.printf("%d/%d games, %s scores %.1f%%, %.1f games/s%n", n, games, args[0],
+                        50.0 * p / n, n / ((System.nanoTime() - start) / 1e9));
+            }
+        });
+        System.out.println(args[0] + " vs " + args[1] + ":");
+        System.out.println(summary);
+    }
+}
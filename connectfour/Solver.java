@@ -0,0 +1,442 @@
+package connectfour;
+
+/**
+ * Exact solver for standard Connect-Four (7 columns, 6 rows, connect 4).
+ * <p>
+ * The solver returns the game-theoretic score of a position under perfect
+ * play by both sides. A positive score means the player to move wins, a
+ * negative score that they lose and 0 a draw; the magnitude tells how early
+ * the game is decided: a player who wins with their k-th token scores
+ * {@code 22 - k}, so faster wins score higher. {@link #pliesToEnd(int, int)}
+ * converts a score into a distance in plies.
+ * </p>
+ * <p>
+ * Positions are held in two 64-bit words, the tokens of the player to move
+ * and the mask of all occupied cells, and searched with null-window
+ * negamax, a {@link TranspositionTable} of score bounds and an optional
+ * {@link OpeningTable} of precomputed scores for the early plies.
+ * </p>
+ */
+public class Solver {
+
+    public static final int WIDTH = 7;
+    public static final int HEIGHT = 6;
+    public static final int CONNECT = 4;
+    public static final int MIN_SCORE = -(WIDTH * HEIGHT) / 2 + 3;
+    public static final int MAX_SCORE = (WIDTH * HEIGHT + 1) / 2 - 3;
+    public static final int DEFAULT_TABLE_MB = 64;
+
+    private static final int CELLS = WIDTH * HEIGHT;
+    private static final int H1 = HEIGHT + 1;
+    private static final long BOTTOM_MASK = bottomMask();
+    private static final long BOARD_MASK = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+    private static final int[] ORDER = HardAI.centerFirstOrder(WIDTH);
+
+    private final TranspositionTable table;
+    private OpeningTable openings;
+    private final long[][] sortMoves = new long[CELLS + 1][WIDTH];
+    private final int[][] sortScores = new int[CELLS + 1][WIDTH];
+    private long nodes;
+
+    /**
+     * Create a solver with a transposition table of
+     * {@link #DEFAULT_TABLE_MB} megabytes.
+     */
+    public Solver() {
+        this(DEFAULT_TABLE_MB);
+    }
+
+    /**
+     * Create a solver with a transposition table of the given size.
+     *
+     * @param tableMegabytes transposition table size in megabytes
+     */
+    public Solver(int tableMegabytes) {
+        this.table = new TranspositionTable(tableMegabytes);
+    }
+
+    /**
+     * Use a table of precomputed opening scores, or none when null.
+     *
+     * @param openings opening table to consult
+     */
+    public void setOpeningTable(OpeningTable openings) {
+        this.openings = openings;
+    }
+
+    /**
+     * Returns the table of opening scores in use.
+     *
+     * @return opening table, or null when there is none
+     */
+    public OpeningTable getOpeningTable() {
+        return openings;
+    }
+
+    /**
+     * Check whether a board has the standard dimensions this solver handles.
+     *
+     * @param board board to check
+     * @return true for a 6-row, 7-column, connect-4 board
+     */
+    public static boolean supports(Board board) {
+        return board.getRows() == HEIGHT && board.getCols() == WIDTH && board.getConnect() == CONNECT;
+    }
+
+    /**
+     * Solve a position exactly.
+     *
+     * @param board  a standard board in which nobody has won yet
+     * @param toMove token of the player to move
+     * @return game-theoretic score for {@code toMove}
+     */
+    public int solve(Board board, char toMove) {
+        long[] position = encode(board, toMove);
+        return solve(position[0], position[1], board.getMoveCount());
+    }
+
+    /**
+     * Solve every legal move in a position.
+     *
+     * @param board  a standard board in which nobody has won yet
+     * @param toMove token of the player to move
+     * @return score for {@code toMove} after playing each column, or
+     *         {@link Integer#MIN_VALUE} for full columns
+     */
+    public int[] analyze(Board board, char toMove) {
+        long[] position = encode(board, toMove);
+        long current = position[0];
+        long mask = position[1];
+        int moves = board.getMoveCount();
+
+        int[] scores = new int[WIDTH];
+        for (int col = 0; col < WIDTH; col++) {
+            if (!canPlay(mask, col)) {
+                scores[col] = Integer.MIN_VALUE;
+            } else if (isWinningMove(current, mask, col)) {
+                scores[col] = (CELLS + 1 - moves) / 2;
+            } else {
+                long move = (mask + bottomMaskCol(col)) & columnMask(col);
+                scores[col] = -solve(current ^ mask, mask | move, moves + 1);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Returns the number of positions visited since the solver was created.
+     *
+     * @return node count
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Convert a score into the number of plies left until the game ends
+     * under perfect play, counting the winning move itself.
+     *
+     * @param score     score returned by the solver
+     * @param moveCount tokens on the board when the score was computed
+     * @return plies until the win or loss, or until the board fills for a
+     *         draw
+     */
+    public static int pliesToEnd(int score, int moveCount) {
+        if (score > 0) {
+            int stones = (CELLS / 2 + 1) - score; // winner's token count at the win
+            return 2 * (stones - moveCount / 2) - 1;
+        }
+        if (score < 0) {
+            int stones = (CELLS / 2 + 1) + score;
+            return 2 * (stones - (moveCount + 1) / 2);
+        }
+        return CELLS - moveCount;
+    }
+
+    /**
+     * Explanation of the solver:
+     *
+     * - Bit layout matches {@link Board}: column-major with one guard bit on
+     * top of each column, so bit = col * 7 + height. {@code current} holds
+     * the tokens of the player to move and {@code mask} every token. Playing
+     * a move is {@code current ^= mask; mask |= move}, which also hands the
+     * turn to the other player, and {@code current + mask} is a unique key
+     * for the position.
+     *
+     * - {@link #winningCells(long,long)} computes in a few shifts every empty
+     * cell that would complete four for a player. From it the search knows
+     * immediately whether the player to move can win, and which moves must
+     * be played (to block) or must not be played (because they let the
+     * opponent win on the cell just above).
+     *
+     * - Null-window search: instead of asking "what is the score?" each
+     * negamax call asks "is the score above this value?" with the window
+     * (value, value + 1). Such searches cut off far more, and
+     * {@link #solve(long,long,int)} binary-searches the exact score
+     * with a handful of them. The transposition table remembers the upper
+     * or lower bound each search proved.
+     *
+     * - Moves are tried in order of how many winning cells they create for
+     * the mover, breaking ties center-first.
+     */
+
+    private int solve(long current, long mask, int moves) {
+        if (canWinNext(current, mask)) {
+            return (CELLS + 1 - moves) / 2;
+        }
+        int min = -(CELLS - moves) / 2;
+        int max = (CELLS + 1 - moves) / 2;
+        table.newSearch();
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med) {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med) {
+                med = max / 2;
+            }
+            int r = negamax(current, mask, moves, med, med + 1);
+            if (r <= med) {
+                max = r;
+            } else {
+                min = r;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Score a position, assuming the player to move cannot win immediately.
+     *
+     * @return a value v with: v &lt;= alpha when the true score is &lt;= v,
+     *         v &gt;= beta when the true score is &gt;= v, and the exact score
+     *         otherwise
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        nodes++;
+
+        long next = possibleNonLosingMoves(current, mask);
+        if (next == 0) {
+            return -(CELLS - moves) / 2;
+        }
+        if (moves >= CELLS - 2) {
+            return 0;
+        }
+
+        int min = -(CELLS - 2 - moves) / 2; // opponent cannot win on their next move
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta)
+                return alpha;
+        }
+        int max = (CELLS - 1 - moves) / 2; // we cannot win on this move
+        long key = hash(current + mask);
+        long entry = table.probe(key);
+        if (entry != 0) {
+            int score = TranspositionTable.score(entry);
+            if (TranspositionTable.flag(entry) == TranspositionTable.LOWER) {
+                if (alpha < score) {
+                    alpha = score;
+                    if (alpha >= beta)
+                        return alpha;
+                }
+            } else {
+                max = score;
+            }
+        }
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta)
+                return beta;
+        }
+
+        if (openings != null && moves == openings.getPly()) {
+            int score = openings.get(canonicalKey(current, mask));
+            if (score != OpeningTable.MISSING)
+                return score;
+        }
+
+        long[] sorted = sortMoves[moves];
+        int[] sortedScores = sortScores[moves];
+        int count = 0;
+        for (int i = WIDTH - 1; i >= 0; i--) {
+            long move = next & columnMask(ORDER[i]);
+            if (move == 0)
+                continue;
+            int score = Long.bitCount(winningCells(current | move, mask));
+            int j = count++;
+            while (j > 0 && sortedScores[j - 1] > score) {
+                sorted[j] = sorted[j - 1];
+                sortedScores[j] = sortedScores[j - 1];
+                j--;
+            }
+            sorted[j] = move;
+            sortedScores[j] = score;
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            long move = sorted[i];
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+            if (score >= beta) {
+                table.store(key, score, 0, TranspositionTable.LOWER, -1);
+                return score;
+            }
+            if (score > alpha)
+                alpha = score;
+        }
+        table.store(key, alpha, 0, TranspositionTable.UPPER, -1);
+        return alpha;
+    }
+
+    /**
+     * Encode a standard board as the bitboard of the player to move and the
+     * mask of occupied cells.
+     */
+    private static long[] encode(Board board, char toMove) {
+        if (!supports(board)) {
+            throw new IllegalArgumentException("The solver only handles 7x6 connect-4 boards.");
+        }
+        long current = 0L;
+        long mask = 0L;
+        for (int col = 0; col < WIDTH; col++) {
+            for (int h = 0; h < board.getHeight(col); h++) {
+                long bit = 1L << (col * H1 + h);
+                mask |= bit;
+                if (board.getToken(HEIGHT - 1 - h, col) == toMove)
+                    current |= bit;
+            }
+        }
+        return new long[] { current, mask };
+    }
+
+    /**
+     * Returns the canonical key of a standard board.
+     *
+     * @param board  a standard board
+     * @param toMove token of the player to move
+     * @return canonical position key
+     */
+    static long canonicalKey(Board board, char toMove) {
+        long[] position = encode(board, toMove);
+        return canonicalKey(position[0], position[1]);
+    }
+
+    /**
+     * Returns the key of a position or of its mirror image, whichever is
+     * smaller, so that mirrored positions share opening table entries.
+     *
+     * @param current tokens of the player to move
+     * @param mask    all tokens
+     * @return canonical position key
+     */
+    static long canonicalKey(long current, long mask) {
+        long key = current + mask;
+        long mirrored = mirror(current) + mirror(mask);
+        return Math.min(key, mirrored);
+    }
+
+    private static long mirror(long bits) {
+        long result = 0L;
+        long column = (1L << H1) - 1;
+        for (int col = 0; col < WIDTH; col++) {
+            long c = (bits >>> (col * H1)) & column;
+            result |= c << ((WIDTH - 1 - col) * H1);
+        }
+        return result;
+    }
+
+    /**
+     * Spread the structured position key over the table index bits. The
+     * multiplier is odd, so distinct keys stay distinct.
+     */
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    static boolean canPlay(long mask, int col) {
+        return (mask & topMaskCol(col)) == 0;
+    }
+
+    static boolean isWinningMove(long current, long mask, int col) {
+        return (winningCells(current, mask) & possible(mask) & columnMask(col)) != 0;
+    }
+
+    static boolean canWinNext(long current, long mask) {
+        return (winningCells(current, mask) & possible(mask)) != 0;
+    }
+
+    /**
+     * Moves that do not hand the opponent an immediate win: a forced block
+     * if there is exactly one, nothing if there are two, and otherwise every
+     * playable cell not directly below an opponent winning cell.
+     */
+    static long possibleNonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWin = winningCells(current ^ mask, mask);
+        long forced = possible & opponentWin;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0)
+                return 0; // two threats cannot both be blocked
+            possible = forced;
+        }
+        return possible & ~(opponentWin >>> 1);
+    }
+
+    /**
+     * Every empty cell that would complete four in a row for the player
+     * whose tokens are {@code position}.
+     */
+    static long winningCells(long position, long mask) {
+        // vertical
+        long r = (position << 1) & (position << 2) & (position << 3);
+
+        // horizontal
+        long p = (position << H1) & (position << 2 * H1);
+        r |= p & (position << 3 * H1);
+        r |= p & (position >>> H1);
+        p = (position >>> H1) & (position >>> 2 * H1);
+        r |= p & (position << H1);
+        r |= p & (position >>> 3 * H1);
+
+        // diagonal going down to the right
+        p = (position << HEIGHT) & (position << 2 * HEIGHT);
+        r |= p & (position << 3 * HEIGHT);
+        r |= p & (position >>> HEIGHT);
+        p = (position >>> HEIGHT) & (position >>> 2 * HEIGHT);
+        r |= p & (position << HEIGHT);
+        r |= p & (position >>> 3 * HEIGHT);
+
+        // diagonal going up to the right
+        p = (position << (H1 + 1)) & (position << 2 * (H1 + 1));
+        r |= p & (position << 3 * (H1 + 1));
+        r |= p & (position >>> (H1 + 1));
+        p = (position >>> (H1 + 1)) & (position >>> 2 * (H1 + 1));
+        r |= p & (position << (H1 + 1));
+        r |= p & (position >>> 3 * (H1 + 1));
+
+        return r & (BOARD_MASK ^ mask);
+    }
+
+    private static long possible(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    private static long topMaskCol(int col) {
+        return 1L << (HEIGHT - 1 + col * H1);
+    }
+
+    private static long bottomMaskCol(int col) {
+        return 1L << (col * H1);
+    }
+
+    private static long columnMask(int col) {
+        return ((1L << HEIGHT) - 1) << (col * H1);
+    }
+
+    private static long bottomMask() {
+        long mask = 0L;
+        for (int col = 0; col < WIDTH; col++) {
+            mask |= bottomMaskCol(col);
+        }
+        return mask;
+    }
+}
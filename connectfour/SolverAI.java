@@ -0,0 +1,117 @@
+package connectfour;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Perfect-play AI for the standard 7x6 connect-4 board.
+ * <p>
+ * Every legal move is solved exactly with {@link Solver} and the move with
+ * the best game-theoretic score is played, preferring central columns on
+ * ties. Boards of any other size are handed to a fallback AI.
+ * </p>
+ * <p>
+ * Solving the first few plies from scratch can take minutes, so positions
+ * with fewer than {@link #DEFAULT_SOLVE_FROM_PLY} tokens are also played
+ * by the fallback. An {@link OpeningTable} only covers the positions before
+ * its ply: every move from them leads into the table. Positions from the
+ * table's ply up to the solve-from ply still go to the fallback, since the
+ * solver would have to search them from scratch.
+ * </p>
+ */
+public class SolverAI implements AIPlayer {
+    public static final int DEFAULT_SOLVE_FROM_PLY = 12;
+    public static final long FALLBACK_MOVE_MILLIS = 1000;
+
+    private final Solver solver;
+    private final AIPlayer fallback;
+    private int solveFromPly;
+    private boolean lastSolved;
+    private int lastScore;
+
+    /**
+     * Create a SolverAI with a default solver, using
+     * {@link OpeningTable#DEFAULT_FILE} when it exists, and a time-limited
+     * {@link HardAI} as the fallback.
+     */
+    public SolverAI() {
+        this(new Solver(), new HardAI(Solver.WIDTH * Solver.HEIGHT, HardAI.DEFAULT_TABLE_MB, FALLBACK_MOVE_MILLIS),
+                DEFAULT_SOLVE_FROM_PLY);
+        File file = new File(OpeningTable.DEFAULT_FILE);
+        if (file.exists()) {
+            try {
+                solver.setOpeningTable(OpeningTable.load(file.getPath()));
+            } catch (IOException e) {
+                System.err.println("Failed to load opening table.");
+            }
+        }
+    }
+
+    /**
+     * Create a SolverAI with the given solver and fallback.
+     *
+     * @param solver       solver for standard boards
+     * @param fallback     AI used for other boards and for early positions
+     * @param solveFromPly fewest tokens on the board for the solver to be
+     *                     used, apart from positions the solver's opening
+     *                     table covers; 0 always solves
+     */
+    public SolverAI(Solver solver, AIPlayer fallback, int solveFromPly) {
+        this.solver = solver;
+        this.fallback = fallback;
+        this.solveFromPly = solveFromPly;
+    }
+
+    @Override
+    public int chooseMove(Board board, char aiToken, char opponentToken) {
+        int moves = board.getMoveCount();
+        OpeningTable openings = solver.getOpeningTable();
+        // analyze solves the position after each move, so the table covers moves + 1 == ply
+        boolean covered = openings != null && moves < openings.getPly();
+        lastSolved = Solver.supports(board) && (moves >= solveFromPly || covered);
+        if (!lastSolved) {
+            return fallback.chooseMove(board, aiToken, opponentToken);
+        }
+
+        int[] scores = solver.analyze(board, aiToken);
+        int bestMove = -1;
+        for (int col : HardAI.centerFirstOrder(board.getCols())) {
+            if (scores[col] == Integer.MIN_VALUE)
+                continue;
+            if (bestMove == -1 || scores[col] > scores[bestMove]) {
+                bestMove = col;
+            }
+        }
+        lastScore = scores[bestMove];
+        return bestMove;
+    }
+
+    /**
+     * Returns whether the last move was chosen by the solver rather than the
+     * fallback AI.
+     *
+     * @return true when the last move was solved
+     */
+    public boolean wasLastMoveSolved() {
+        return lastSolved;
+    }
+
+    /**
+     * Returns the exact score of the last solved move, for the AI: positive
+     * wins, negative loses, 0 draws. See {@link Solver} for the scale.
+     *
+     * @return game-theoretic score
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Returns the solver used on standard boards.
+     *
+     * @return solver
+     */
+    public Solver getSolver() {
+        return solver;
+    }
+}
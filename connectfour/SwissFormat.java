@@ -0,0 +1,254 @@
+package connectfour;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Swiss-system tournament: a fixed number of rounds in which players with
+ * equal scores meet, and no two players meet twice.
+ * <p>
+ * Before each round the players are ordered by score, highest first, and
+ * by seed within a score, and paired from the top down with the nearest
+ * player they have not met yet. A player left over in a score group floats
+ * down to the next group. With an odd number of players the lowest-ranked
+ * player who has not had a bye yet gets one, worth a win. A round is
+ * paired only once every result of the round before is in.
+ * </p>
+ * <p>
+ * A round costs O(players x rounds): ordering by score is a counting sort,
+ * and each player usually finds a fresh opponent among the next few in
+ * order. Each player's opponents are kept in a small array rather than a
+ * set, so a 100,000-player event stays a few megabytes.
+ * </p>
+ */
+public class SwissFormat implements TournamentFormat {
+    private final List<String> players;
+    private final int rounds;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final int[] score;
+    private final int[][] opponents; // per player, the first met[p] entries are players met so far
+    private final int[] met;
+    private final boolean[] hadBye;
+    private final ArrayDeque<Match> pending = new ArrayDeque<>();
+    private int round; // rounds paired so far
+    private int outstanding; // results of the current round not reported yet
+    private long handedOut;
+
+    /**
+     * Create a Swiss event.
+     *
+     * @param players players in seeding order, strongest first
+     * @param rounds  number of rounds, at most players - 1
+     */
+    public SwissFormat(List<String> players, int rounds) {
+        if (rounds < 1 || rounds > Math.max(1, players.size() - 1)) {
+            throw new IllegalArgumentException("A Swiss event needs between 1 and players - 1 rounds.");
+        }
+        this.players = players;
+        this.rounds = rounds;
+        int n = players.size();
+        for (int i = 0; i < n; i++) {
+            if (index.put(players.get(i), i) != null) {
+                throw new IllegalArgumentException("Duplicate player: " + players.get(i));
+            }
+        }
+        score = new int[n];
+        opponents = new int[n][rounds];
+        met = new int[n];
+        hadBye = new boolean[n];
+    }
+
+    /**
+     * Returns the usual number of rounds for a field: enough for a single
+     * undefeated winner, log2 of the field size rounded up.
+     *
+     * @param players field size
+     * @return default round count
+     */
+    public static int defaultRounds(int players) {
+        int rounds = 32 - Integer.numberOfLeadingZeros(Math.max(1, players - 1));
+        return Math.max(1, Math.min(rounds, players - 1));
+    }
+
+    @Override
+    public Match nextMatch() {
+        if (pending.isEmpty() && outstanding == 0 && round < rounds && players.size() > 1) {
+            pairRound();
+        }
+        Match m = pending.poll();
+        if (m != null && m.player2 != null) {
+            handedOut++;
+        }
+        return m;
+    }
+
+    @Override
+    public void recordResult(String winner, String loser) {
+        Integer w = index.get(winner);
+        if (w == null || index.get(loser) == null) {
+            throw new IllegalArgumentException("Unknown player in result: " + winner + " vs " + loser);
+        }
+        score[w]++;
+        outstanding--;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return (round == rounds || players.size() < 2) && pending.isEmpty();
+    }
+
+    @Override
+    public long remainingMatches() {
+        return (players.size() < 2) ? 0 : (long) rounds * (players.size() / 2) - handedOut;
+    }
+
+    @Override
+    public String describe() {
+        return "Swiss, " + rounds + " rounds";
+    }
+
+    /**
+     * @return rounds paired so far
+     */
+    public int getRound() {
+        return round;
+    }
+
+    /**
+     * Explanation of the pairing:
+     *
+     * - Players are ordered by a counting sort on score, which keeps seed
+     * order within each score and runs in linear time.
+     *
+     * - With an odd field, the bye goes to the lowest player in that order
+     * without one, so a player gets at most one bye while anyone else has
+     * none.
+     *
+     * - Going down the order, each unpaired player takes the next unpaired
+     * player below them that they have not met. Equal scores are adjacent,
+     * so this pairs within score groups first and floats the odd player of
+     * a group down to the next one.
+     *
+     * - Near the bottom the greedy pass can strand players who have all met
+     * each other. Each stranded pair is then swapped into the nearest
+     * earlier pair where both new pairings are fresh. Such a swap is
+     * possible as long as rounds stay below players - 1, the usual Swiss
+     * setting.
+     */
+    private void pairRound() {
+        int n = players.size();
+        int[] order = orderByScore();
+        boolean[] paired = new boolean[n];
+
+        if (n % 2 == 1) {
+            int bye = order[n - 1];
+            for (int i = n - 1; i >= 0; i--) {
+                if (!hadBye[order[i]]) {
+                    bye = order[i];
+                    break;
+                }
+            }
+            hadBye[bye] = true;
+            paired[bye] = true;
+            score[bye]++;
+            pending.add(new Match(players.get(bye), null));
+        }
+
+        int[][] pairs = new int[n / 2][];
+        int count = 0;
+        int[] stranded = new int[n];
+        int strandedCount = 0;
+        int next = 0; // every player above this position is paired
+        for (int i = 0; i < n; i++) {
+            int a = order[i];
+            if (paired[a])
+                continue;
+            while (next < n && paired[order[next]])
+                next++;
+            int partner = -1;
+            for (int j = Math.max(i + 1, next); j < n; j++) {
+                int b = order[j];
+                if (!paired[b] && !hasMet(a, b)) {
+                    partner = b;
+                    break;
+                }
+            }
+            paired[a] = true;
+            if (partner < 0) {
+                stranded[strandedCount++] = a;
+            } else {
+                paired[partner] = true;
+                pairs[count++] = new int[] { a, partner };
+            }
+        }
+
+        for (int s = 0; s + 1 < strandedCount; s += 2) {
+            int u = stranded[s];
+            int v = stranded[s + 1];
+            if (!hasMet(u, v)) {
+                pairs[count++] = new int[] { u, v };
+                continue;
+            }
+            boolean swapped = false;
+            for (int k = count - 1; k >= 0 && !swapped; k--) {
+                int a = pairs[k][0];
+                int b = pairs[k][1];
+                if (!hasMet(u, a) && !hasMet(v, b)) {
+                    pairs[k] = new int[] { a, u };
+                    pairs[count++] = new int[] { b, v };
+                    swapped = true;
+                } else if (!hasMet(u, b) && !hasMet(v, a)) {
+                    pairs[k] = new int[] { a, v };
+                    pairs[count++] = new int[] { b, u };
+                    swapped = true;
+                }
+            }
+            if (!swapped) {
+                throw new IllegalStateException("No Swiss pairing without a rematch exists for round " + (round + 1));
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            int a = pairs[k][0];
+            int b = pairs[k][1];
+            opponents[a][met[a]++] = b;
+            opponents[b][met[b]++] = a;
+            // alternate who moves first by round so neither side keeps the first move
+            pending.add((round % 2 == 0) ? new Match(players.get(a), players.get(b))
+                    : new Match(players.get(b), players.get(a)));
+        }
+        outstanding = count;
+        round++;
+    }
+
+    private boolean hasMet(int a, int b) {
+        int[] list = opponents[a];
+        for (int i = 0; i < met[a]; i++) {
+            if (list[i] == b)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return player indices by score descending, seed ascending within a
+     *         score
+     */
+    private int[] orderByScore() {
+        int n = players.size();
+        int[] start = new int[round + 3]; // scores range over 0..round
+        for (int p = 0; p < n; p++) {
+            start[round - score[p] + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
+        }
+        int[] order = new int[n];
+        for (int p = 0; p < n; p++) {
+            order[start[round - score[p]]++] = p;
+        }
+        return order;
+    }
+}
@@ -5,59 +5,198 @@ import java.util.*;
 public class Tournament {
     private final String id;
     private final List<String> players;
-    private final Queue<Match> matchQueue = new LinkedList<>();
+    private TournamentFormat format;
     private final Map<String, TournamentStats> stats = new HashMap<>();
     private final AVLTree<TournamentEntry> standings = new AVLTree<>();
+    private final RatingSystem ratings;
 
     public Tournament(String id, List<String> players) {
+        this(id, players, null);
+    }
+
+    /**
+     * Create a tournament whose matches also rate the registered players
+     * among its entrants. Other entrants get a rating for this tournament
+     * only.
+     *
+     * @param id      tournament id
+     * @param players entrants
+     * @param manager registered players, or null to rate nobody outside
+     *                the tournament
+     */
+    public Tournament(String id, List<String> players, PlayerManager manager) {
         this.id = id;
         this.players = players;
+        this.ratings = (manager == null) ? new RatingSystem() : manager.getRatings();
         for (String player : players) {
-            stats.put(player, new TournamentStats());
+            Rating rating = (manager == null) ? null : manager.ratingOf(player);
+            stats.put(player, (rating == null) ? new TournamentStats() : new TournamentStats(rating));
             standings.insert(new TournamentEntry(player));
         }
     }
 
-    public void scheduleMatches() {
-        for (int i = 0; i < players.size(); i++) {
-            for (int j = i + 1; j < players.size(); j++) {
-                matchQueue.add(new Match(players.get(i), players.get(j)));
-            }
+    public synchronized void scheduleMatches() {
+        scheduleMatches(new RoundRobinSchedule(players));
+    }
+
+    /**
+     * Resume the round-robin schedule at a checkpoint taken earlier with
+     * {@link #getCheckpoint()}.
+     *
+     * @param from position of the next match to play
+     */
+    public synchronized void scheduleMatches(RoundRobinSchedule.Checkpoint from) {
+        scheduleMatches(new RoundRobinSchedule(players, from));
+    }
+
+    /**
+     * Play the tournament in the given format, replacing any earlier
+     * schedule. Standings carry over.
+     *
+     * @param format format built over {@link #getPlayers()}
+     */
+    public synchronized void scheduleMatches(TournamentFormat format) {
+        this.format = format;
+        notifyAll();
+    }
+
+    /**
+     * Returns the position of the next match in a round-robin schedule.
+     * Matches that were handed out but are still being played count as
+     * done, so take the checkpoint while no run is active.
+     *
+     * @return checkpoint, or null when no round robin was scheduled
+     */
+    public synchronized RoundRobinSchedule.Checkpoint getCheckpoint() {
+        return (format instanceof RoundRobinSchedule schedule) ? schedule.getCheckpoint() : null;
+    }
+
+    /**
+     * @return the format being played, or null when none was scheduled
+     */
+    public synchronized TournamentFormat getFormat() {
+        return format;
+    }
+
+    public List<String> getPlayers() {
+        return players;
+    }
+
+    public synchronized boolean hasNextMatch() {
+        return format != null && !format.isFinished();
+    }
+
+    /**
+     * Returns the next match without waiting. Byes are recorded as wins on
+     * the way and never returned.
+     *
+     * @return the match, or null when none can be played until results of
+     *         matches in progress are recorded, or because all were played
+     */
+    public synchronized Match getNextMatch() {
+        if (format == null)
+            return null;
+        Match m = format.nextMatch();
+        while (m != null && m.player2 == null) {
+            recordWin(m.player1);
+            m = format.nextMatch();
+        }
+        return m;
+    }
+
+    /**
+     * Returns the next match, waiting while the format needs results of
+     * matches in progress before it can pair the next round.
+     *
+     * @return the match, or null once every match has been handed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Match takeNextMatch() throws InterruptedException {
+        while (true) {
+            Match m = getNextMatch();
+            if (m != null || !hasNextMatch())
+                return m;
+            wait();
         }
     }
 
-    public boolean hasNextMatch() {
-        return !matchQueue.isEmpty();
+    public synchronized long remainingMatches() {
+        return (format == null) ? 0 : format.remainingMatches();
     }
 
-    public Match getNextMatch() {
-        return matchQueue.poll();
+    public synchronized void recordMatchResult(String winner, String loser) {
+        if (format != null) {
+            format.recordResult(winner, loser);
+        }
+        recordWin(winner);
+        stats.get(loser).recordLoss();
+        ratings.record(stats.get(winner).getRating(), stats.get(loser).getRating(), 1);
+        notifyAll();
     }
 
-    public void recordMatchResult(String winner, String loser) {
+    private void recordWin(String winner) {
         TournamentStats winnerStats = stats.get(winner);
-        TournamentStats loserStats = stats.get(loser);
 
         TournamentEntry oldEntry = new TournamentEntry(winner);
         oldEntry.setWins(winnerStats.getWins());
         standings.remove(oldEntry);
 
         winnerStats.recordWin();
-        loserStats.recordLoss();
 
         TournamentEntry newEntry = new TournamentEntry(winner);
         newEntry.setWins(winnerStats.getWins());
         standings.insert(newEntry);
     }
 
-    public void printStandings() {
-        System.out.println("Tournament Standings (by Wins DESC, Name ASC):");
-        List<TournamentEntry> ordered = standings.inOrder();
+    public synchronized void printStandings() {
+        printStandings(0, standings.size());
+    }
+
+    /**
+     * Print one page of the standings.
+     *
+     * @param from  0-based index of the first place to print
+     * @param count number of places to print
+     */
+    public synchronized void printStandings(int from, int count) {
+        int size = standings.size();
+        int to = (int) Math.min((long) from + count, size);
+        if (count < 1) {
+            System.out.println("The number of places must be at least 1.");
+            return;
+        }
+        if (from >= size) {
+            System.out.println("There are only " + size + " places in the standings.");
+            return;
+        }
+        if (format != null) {
+            System.out.println("Format: " + format.describe());
+        }
+        System.out.println("Tournament Standings (by Wins DESC, Name ASC), places " + (from + 1) + "-" + to
+                + " of " + size + ":");
+
+        int rank = from + 1;
+        for (TournamentEntry entry : standings.range(from, to)) {
+            System.out.printf("%d. %s (%d wins) - %s%n", rank++, entry.getName(), entry.getWins(),
+                    stats.get(entry.getName()).getRating());
+        }
+    }
 
-        int rank = 1;
-        for (TournamentEntry entry : ordered) {
-            System.out.printf("%d. %s (%d wins)%n", rank++, entry.getName(), entry.getWins());
+    /**
+     * Print a player's place in the standings.
+     *
+     * @param player player name
+     */
+    public synchronized void printRank(String player) {
+        TournamentStats playerStats = stats.get(player);
+        if (playerStats == null) {
+            System.out.println(player + " is not in this tournament.");
+            return;
         }
+        TournamentEntry entry = new TournamentEntry(player);
+        entry.setWins(playerStats.getWins());
+        System.out.printf("%s is in place %d of %d (%d wins)%n", player, standings.rank(entry) + 1, standings.size(),
+                playerStats.getWins());
     }
 
     public String getId() {
@@ -0,0 +1,51 @@
+package connectfour;
+
+/**
+ * Decides who plays whom in a {@link Tournament}.
+ * <p>
+ * The tournament asks its format for matches one at a time and reports
+ * every result back. A format whose pairings depend on earlier results,
+ * such as Swiss or knockout, returns no match while a round is still
+ * waiting for results, and hands out the next round once they are in.
+ * The tournament serializes all calls, so formats need no locking of
+ * their own.
+ * </p>
+ * <p>
+ * A match whose second player is null is a bye: the first player scores a
+ * win without playing, and no result is reported back for it.
+ * </p>
+ */
+public interface TournamentFormat {
+
+    /**
+     * Returns the next match to play.
+     *
+     * @return the match, or null when none can be handed out until more
+     *         results are reported, or because the format is finished
+     */
+    Match nextMatch();
+
+    /**
+     * Report the result of a match handed out by {@link #nextMatch()}.
+     *
+     * @param winner name of the winner
+     * @param loser  name of the loser
+     */
+    void recordResult(String winner, String loser);
+
+    /**
+     * @return whether every match has been handed out, so
+     *         {@link #nextMatch()} will never return a match again
+     */
+    boolean isFinished();
+
+    /**
+     * @return number of matches, byes excluded, not handed out yet
+     */
+    long remainingMatches();
+
+    /**
+     * @return short description such as "round robin" or "Swiss, 7 rounds"
+     */
+    String describe();
+}
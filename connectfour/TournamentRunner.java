@@ -0,0 +1,226 @@
+package connectfour;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Plays a tournament's scheduled matches in the background on several
+ * threads, in whatever format the tournament was started with.
+ * <p>
+ * Worker threads take matches from the tournament's schedule one at a
+ * time and play each on a board and a pair of AIs of its own. They never
+ * touch the standings: each result goes onto a queue, and a single writer
+ * thread applies the results to the tournament in the order they arrive.
+ * Standings can therefore be printed at any time while the run goes on.
+ * </p>
+ */
+public class TournamentRunner {
+    private static final int ROWS = 6;
+    private static final int COLS = 7;
+    private static final int CONNECT = 4;
+
+    private final Tournament tournament;
+    private final int threads;
+    private final BlockingQueue<String[]> results = new LinkedBlockingQueue<>(); // {winner, loser}
+    private final Thread[] workers;
+    private Thread writer;
+    private int working; // workers not finished yet, guarded by this
+    private volatile boolean stopped;
+    private volatile int played;
+    private volatile long total;
+    private long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Prepare a run of the tournament's remaining scheduled matches.
+     *
+     * @param tournament tournament whose schedule is played
+     * @param threads    number of matches played at once
+     */
+    public TournamentRunner(Tournament tournament, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        this.tournament = tournament;
+        this.threads = threads;
+        this.workers = new Thread[threads];
+    }
+
+    /**
+     * Start the worker and writer threads and return at once.
+     */
+    public void start() {
+        total = tournament.remainingMatches();
+        startNanos = System.nanoTime();
+        working = threads;
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "Tournament-" + tournament.getId() + "-worker-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        writer = new Thread(this::write, "Tournament-" + tournament.getId() + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop taking new matches. Matches already being played finish and are
+     * recorded before this returns.
+     */
+    public void stop() {
+        stopped = true;
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.interrupt(); // wakes workers waiting for the next round
+            }
+        }
+        awaitCompletion();
+    }
+
+    /**
+     * Wait until every match of the run has been played and recorded.
+     */
+    public void awaitCompletion() {
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether matches are still being played or recorded
+     */
+    public boolean isRunning() {
+        return writer != null && writer.isAlive();
+    }
+
+    /**
+     * @return matches played and recorded so far
+     */
+    public int getPlayed() {
+        return played;
+    }
+
+    /**
+     * @return matches that were scheduled when the run started
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return seconds since the run started, up to its end
+     */
+    public double getElapsedSeconds() {
+        long end = endNanos;
+        return ((end == 0 ? System.nanoTime() : end) - startNanos) / 1e9;
+    }
+
+    /**
+     * Explanation of the threads:
+     *
+     * - Workers share nothing but the schedule, whose poll is synchronized
+     * in Tournament, and the result queue. Each builds one board and one
+     * pair of AIs and reuses them for all its matches, clearing the board
+     * and the AIs' transposition tables in between, so every match plays
+     * exactly as a single 'next' does without allocating new tables.
+     *
+     * - A Swiss or knockout round can only be paired once the round before
+     * is fully recorded, so a worker that finds nothing to play waits in
+     * takeNextMatch until the writer records the missing results.
+     *
+     * - Only the writer calls recordMatchResult, so results are applied one
+     * at a time in a single order and the standings tree is never updated
+     * from two threads. Tournament still locks each update, which lets the
+     * REPL thread print standings in between.
+     *
+     * - The last worker to finish queues an empty marker, which tells the
+     * writer that no more results will come.
+     */
+    private void work() {
+        Board board = new Board(ROWS, COLS, CONNECT);
+        HardAI p1AI = new HardAI();
+        HardAI p2AI = new HardAI();
+        try {
+            while (!stopped) {
+                Match match = tournament.takeNextMatch();
+                if (match == null)
+                    break;
+                String winner = playMatch(match, board, p1AI, p2AI);
+                String loser = winner.equals(match.player1) ? match.player2 : match.player1;
+                results.add(new String[] { winner, loser });
+            }
+        } catch (InterruptedException e) {
+            // stopped while waiting for the next round
+        } finally {
+            synchronized (this) {
+                if (--working == 0) {
+                    results.add(new String[0]);
+                }
+            }
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                String[] result = results.take();
+                if (result.length == 0)
+                    break;
+                tournament.recordMatchResult(result[0], result[1]);
+                played++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Play one match between two default hard AIs on a fresh board. Player
+     * 1 moves first. A drawn match goes to a player chosen at random.
+     *
+     * @param m match to play
+     * @return name of the winner
+     */
+    public static String playMatch(Match m) {
+        return playMatch(m, new Board(ROWS, COLS, CONNECT), new HardAI(), new HardAI());
+    }
+
+    /**
+     * Play one match on a board and AIs left over from an earlier one.
+     * They are reset first, so the result is the same as on fresh ones.
+     */
+    private static String playMatch(Match m, Board board, HardAI p1AI, HardAI p2AI) {
+        board.clear();
+        p1AI.clearTable();
+        p2AI.clearTable();
+        char p1Token = 'X';
+        char p2Token = 'O';
+        int maxMoves = ROWS * COLS;
+
+        for (int i = 0; i < maxMoves; i++) {
+            // Player 1
+            int c1 = p1AI.chooseMove(board, p1Token, p2Token);
+            int r1 = board.drop(c1, p1Token);
+            if (board.isWinningMove(r1, c1))
+                return m.player1;
+            if (board.isFull())
+                break;
+
+            // Player 2
+            int c2 = p2AI.chooseMove(board, p2Token, p1Token);
+            int r2 = board.drop(c2, p2Token);
+            if (board.isWinningMove(r2, c2))
+                return m.player2;
+            if (board.isFull())
+                break;
+        }
+
+        return ThreadLocalRandom.current().nextBoolean() ? m.player1 : m.player2;
+    }
+}
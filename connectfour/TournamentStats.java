@@ -3,6 +3,21 @@ package connectfour;
 public class TournamentStats {
     private int wins = 0;
     private int losses = 0;
+    private final Rating rating;
+
+    public TournamentStats() {
+        this(new Rating());
+    }
+
+    /**
+     * Create stats for a player whose rating is kept elsewhere, such as a
+     * registered player's profile.
+     *
+     * @param rating rating that the tournament's matches update
+     */
+    public TournamentStats(Rating rating) {
+        this.rating = rating;
+    }
 
     public void recordWin() {
         wins++;
@@ -20,6 +35,10 @@ public class TournamentStats {
         return losses;
     }
 
+    public Rating getRating() {
+        return rating;
+    }
+
     @Override
     public String toString() {
         return "W: " + wins + ", L: " + losses;
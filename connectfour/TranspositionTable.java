@@ -0,0 +1,145 @@
+package connectfour;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for the search, keyed by Zobrist hashes.
+ * <p>
+ * Entries are packed two longs at a time into a single {@code long[]}, so a
+ * table of millions of entries is one array and creates no per-entry
+ * objects for the garbage collector to trace. Probing returns the packed
+ * data word, which is decoded with the static accessors.
+ * </p>
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // score is a lower bound (beta cutoff)
+    public static final int UPPER = 3; // score is an upper bound (fail low)
+
+    private static final int DEPTH_SHIFT = 32;
+    private static final int FLAG_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GEN_SHIFT = 54;
+
+    private final long[] table;
+    private final int mask;
+    private int generation;
+
+    /**
+     * Create a table using at most the given amount of memory.
+     *
+     * @param megabytes table size in megabytes (at least 1)
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Table size must be at least 1 MB.");
+        }
+        long entries = Long.highestOneBit(megabytes * (1024L * 1024L) / 16);
+        entries = Math.min(entries, 1L << 29); // keep the long[] under 2^31 elements
+        this.table = new long[(int) entries * 2];
+        this.mask = (int) entries - 1;
+    }
+
+    /**
+     * Returns the number of entries the table holds.
+     *
+     * @return entry capacity
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Mark the start of a new search. Entries left over from earlier
+     * searches may then be replaced regardless of their depth.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key Zobrist key of the position
+     * @return the packed entry data, or 0 when the position is not stored
+     */
+    public long probe(long key) {
+        int i = ((int) key & mask) << 1;
+        long data = table[i + 1];
+        if (data != 0 && (table[i] ^ data) == key) {
+            return data;
+        }
+        return 0L;
+    }
+
+    /**
+     * Store a search result. An entry from the current search is only
+     * replaced by a result searched at least as deep.
+     *
+     * @param key   Zobrist key of the position
+     * @param score score of the position
+     * @param depth remaining depth the score was searched to
+     * @param flag  {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move  best column found, or -1 when none
+     */
+    public void store(long key, int score, int depth, int flag, int move) {
+        int i = ((int) key & mask) << 1;
+        long old = table[i + 1];
+        if (old != 0 && generation(old) == generation && depth(old) > depth
+                && (table[i] ^ old) != key) {
+            return;
+        }
+        long data = (score & 0xFFFFFFFFL)
+                | ((long) Math.min(depth, 0xFF) << DEPTH_SHIFT)
+                | ((long) flag << FLAG_SHIFT)
+                | ((long) ((move + 1) & 0xFFF) << MOVE_SHIFT)
+                | ((long) generation << GEN_SHIFT);
+        table[i] = key ^ data;
+        table[i + 1] = data;
+    }
+
+    /**
+     * Explanation of the entry layout:
+     *
+     * - Each entry is two longs: the key XOR the data, then the data. The
+     * data word packs the score (bits 0-31), depth (32-39), bound flag
+     * (40-41), best move + 1 (42-53) and search generation (54-61).
+     *
+     * - Storing the key XOR the data means a torn entry, half written by one
+     * thread and half by another, fails the key check on probe instead of
+     * returning the data of a different position.
+     *
+     * - Replacement is depth-preferred: within one search an entry for a
+     * different position is only overwritten by a deeper or equal search.
+     * Entries from older generations, and the same position, are always
+     * overwritten.
+     */
+
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int flag(long data) {
+        return (int) (data >>> FLAG_SHIFT) & 0x3;
+    }
+
+    public static int move(long data) {
+        return ((int) (data >>> MOVE_SHIFT) & 0xFFF) - 1;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> GEN_SHIFT) & 0xFF;
+    }
+}
@@ -0,0 +1,268 @@
+package connectfour;
+
+import java.util.Arrays;
+
+/**
+ * Checks the bitboard {@link Board} against the plain character-grid board
+ * it replaced, over random games on several board shapes.
+ * <p>
+ * Both boards play the same random moves, with random undos mixed in
+ * (mostly of the last move, sometimes of the top token of another column),
+ * and after every step they must agree on the row a drop lands in, whether
+ * the move won, which columns are full, whether the board is full, the
+ * token in every cell and the columns where either player could win next.
+ * Every game ends by undoing all its moves, so undo is checked down to the
+ * empty board, whose position key must be 0 again. Now and then the game
+ * goes on with a copy of the board, which must answer the same. The shapes
+ * cover the packed one-long layout, a board that exactly fills a long, and
+ * the multi-long layout of larger boards.
+ * </p>
+ */
+public class BoardCheck {
+    public static final int DEFAULT_GAMES = 2_000; // per shape
+    private static final int[][] SHAPES = { // rows, cols, connect
+            { 6, 7, 4 }, { 4, 5, 3 }, { 1, 9, 3 }, { 9, 1, 4 }, { 7, 8, 4 }, { 8, 8, 4 }, { 8, 9, 5 },
+            { 16, 16, 5 } };
+    private static final int UNDO_ONE_IN = 4; // chance of undoing instead of dropping
+    private static final int OUT_OF_ORDER_ONE_IN = 3; // chance such an undo takes another column's top
+    private static final int COPY_ONE_IN = 16; // chance of going on with a copy of the board
+
+    /**
+     * The board as it was before bitboards: a grid of characters, a space
+     * for an empty cell, scanned cell by cell.
+     */
+    private static final class ArrayBoard {
+        final int rows;
+        final int cols;
+        final int connect;
+        final char[][] grid;
+
+        ArrayBoard(int rows, int cols, int connect) {
+            this.rows = rows;
+            this.cols = cols;
+            this.connect = connect;
+            this.grid = new char[rows][cols];
+            for (char[] row : grid) {
+                Arrays.fill(row, ' ');
+            }
+        }
+
+        boolean isColumnFull(int col) {
+            return grid[0][col] != ' ';
+        }
+
+        int drop(int col, char token) {
+            for (int r = rows - 1; r >= 0; r--) {
+                if (grid[r][col] == ' ') {
+                    grid[r][col] = token;
+                    return r;
+                }
+            }
+            return -1;
+        }
+
+        void undo(int row, int col) {
+            grid[row][col] = ' ';
+        }
+
+        boolean isFull() {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    if (grid[r][c] == ' ')
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isWinningMove(int row, int col) {
+            char token = grid[row][col];
+            int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+            for (int[] dir : directions) {
+                int count = countDirection(row, col, dir[0], dir[1], token)
+                        + countDirection(row, col, -dir[0], -dir[1], token) - 1;
+                if (count >= connect)
+                    return true;
+            }
+            return false;
+        }
+
+        private int countDirection(int r, int c, int dr, int dc, char token) {
+            if (r < 0 || r >= rows || c < 0 || c >= cols)
+                return 0;
+            if (grid[r][c] != token)
+                return 0;
+            return 1 + countDirection(r + dr, c + dc, dr, dc, token);
+        }
+
+        /**
+         * @return the lowest column where the token wins by dropping now,
+         *         or -1
+         */
+        int findWinningColumn(char token) {
+            for (int col = 0; col < cols; col++) {
+                if (isColumnFull(col))
+                    continue;
+                int row = drop(col, token);
+                boolean wins = isWinningMove(row, col);
+                undo(row, col);
+                if (wins)
+                    return col;
+            }
+            return -1;
+        }
+    }
+
+    private final int rows;
+    private final int cols;
+    private final int connect;
+    private Board board;
+    private final ArrayBoard reference;
+    private final int[] moveRows;
+    private final int[] moveCols;
+    private int moves;
+    private long steps;
+
+    BoardCheck(int rows, int cols, int connect) {
+        this.rows = rows;
+        this.cols = cols;
+        this.connect = connect;
+        this.board = new Board(rows, cols, connect);
+        this.reference = new ArrayBoard(rows, cols, connect);
+        this.moveRows = new int[rows * cols];
+        this.moveCols = new int[rows * cols];
+    }
+
+    /**
+     * Play one random game on both boards and undo it again.
+     *
+     * @param rng random state, advanced by the game
+     * @return the advanced random state
+     * @throws IllegalStateException at the first difference
+     */
+    long playGame(long rng) {
+        board.clear();
+        compare("clear");
+        boolean over = false;
+        while (!over) {
+            rng = splitMix(rng);
+            if (Long.remainderUnsigned(rng >>> 40, COPY_ONE_IN) == 0) {
+                board = new Board(board);
+                compare("copy");
+            }
+            if (moves > 0 && Long.remainderUnsigned(rng >>> 32, UNDO_ONE_IN) == 0) {
+                if (Long.remainderUnsigned(rng >>> 48, OUT_OF_ORDER_ONE_IN) == 0)
+                    undoTop((int) Long.remainderUnsigned(rng, cols));
+                else
+                    undoLast();
+                continue;
+            }
+            char token = (moves % 2 == 0) ? 'X' : 'O';
+            int col = (int) Long.remainderUnsigned(rng, cols);
+            int row = board.drop(col, token);
+            int expected = reference.drop(col, token);
+            check(row == expected, "drop " + token + " in column " + col + " landed in row " + row
+                    + ", expected " + expected);
+            if (row < 0)
+                continue; // full column, nothing changed
+            moveRows[moves] = row;
+            moveCols[moves] = col;
+            moves++;
+            boolean won = board.isWinningMove(row, col);
+            check(won == reference.isWinningMove(row, col), "isWinningMove(" + row + ", " + col + ") is " + won);
+            compare("drop " + token + " in column " + col);
+            over = won || board.isFull();
+        }
+        while (moves > 0) {
+            undoLast();
+        }
+        return rng;
+    }
+
+    private void undoLast() {
+        moves--;
+        board.undo(moveRows[moves], moveCols[moves]);
+        reference.undo(moveRows[moves], moveCols[moves]);
+        compare("undo of row " + moveRows[moves] + ", column " + moveCols[moves]);
+    }
+
+    /**
+     * Undo the top token of a column, which need not be the last move.
+     */
+    private void undoTop(int col) {
+        for (int i = moves - 1; i >= 0; i--) {
+            if (moveCols[i] == col) {
+                int row = moveRows[i];
+                System.arraycopy(moveRows, i + 1, moveRows, i, moves - 1 - i);
+                System.arraycopy(moveCols, i + 1, moveCols, i, moves - 1 - i);
+                moves--;
+                board.undo(row, col);
+                reference.undo(row, col);
+                compare("undo of the top of column " + col);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compare everything the two boards can answer about the position.
+     */
+    private void compare(String after) {
+        steps++;
+        check(board.isFull() == reference.isFull(), "isFull is " + board.isFull() + " after " + after);
+        check(board.getMoveCount() == moves, "move count is " + board.getMoveCount() + " after " + after);
+        check(moves > 0 || board.getKey() == 0, "the empty board has key " + board.getKey() + " after " + after);
+        for (int col = 0; col < cols; col++) {
+            check(board.isColumnFull(col) == reference.isColumnFull(col),
+                    "isColumnFull(" + col + ") is " + board.isColumnFull(col) + " after " + after);
+            for (int row = 0; row < rows; row++) {
+                check(board.getToken(row, col) == reference.grid[row][col],
+                        "cell (" + row + ", " + col + ") holds '" + board.getToken(row, col) + "' after " + after);
+            }
+        }
+        for (char token : new char[] { 'X', 'O' }) {
+            int col = board.findWinningColumn(token);
+            check(col == reference.findWinningColumn(token),
+                    "findWinningColumn('" + token + "') is " + col + " after " + after);
+        }
+    }
+
+    private void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(rows + "x" + cols + " connect " + connect + ": " + message);
+        }
+    }
+
+    private static long splitMix(long state) {
+        long z = state + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Command-line runner: {@code java connectfour.BoardCheck [games] [seed]}.
+     * Exits with status 1 at the first difference.
+     *
+     * @param args games per shape and random seed
+     */
+    public static void main(String[] args) {
+        int games = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        long seed = (args.length >= 2) ? Long.parseLong(args[1]) : 1;
+        try {
+            for (int[] shape : SHAPES) {
+                BoardCheck check = new BoardCheck(shape[0], shape[1], shape[2]);
+                long rng = seed ^ ((shape[0] * 31L + shape[1]) << 8) ^ shape[2];
+                for (int g = 0; g < games; g++) {
+                    rng = check.playGame(rng);
+                }
+                System.out.printf("%dx%d connect %d: %d games, %d positions agree%n", shape[0], shape[1], shape[2],
+                        games, check.steps);
+            }
+        } catch (IllegalStateException e) {
+            System.out.println("Mismatch: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("The bitboard matches the array board.");
+    }
+}